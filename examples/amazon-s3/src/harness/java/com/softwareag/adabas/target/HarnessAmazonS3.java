@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+/**
+ * Amazon S3 target for the load harness: the Parquet schemas are derived from
+ * the metadata of the synthetic records, the metadata of the Target Adapter is
+ * not available outside of it. The objects are written to the configured
+ * bucket or S3 compatible endpoint.
+ */
+public class HarnessAmazonS3 extends AmazonS3 implements SyntheticTarget {
+
+	private SyntheticRecords.Shape _shape = SyntheticRecords.Shape.FLAT;
+
+	@Override
+	public void setShape(SyntheticRecords.Shape shape) {
+		_shape = shape;
+	}
+
+	@Override
+	protected AvroSchemaFactory createSchemaFactory() {
+		return new AvroSchemaFactory(table -> SyntheticRecords.metadata(_shape));
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.softwareag.adabas.targetadapter.sdk.AdabasObjectData;
+
+/**
+ * Mapping of Adabas data to Parquet rows and writing of local Parquet files
+ * through {@link TargetAdapterOutputFile}. The write benchmark writes a whole
+ * file per invocation, the score is rows per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ParquetBenchmark {
+
+	private static final int ROWS_PER_FILE = 10000;
+
+	@Param({ "FLAT", "WIDE", "DEEP" })
+	public SyntheticRecords.Shape shape;
+
+	private AdabasObjectData _data;
+	private AvroRecordMapper _mapper;
+	private ChangeLogMapper _changeLogMapper;
+	private GenericRecord[] _rows;
+	private Path _directory;
+
+	@Setup
+	public void setup() throws Exception {
+		_data = SyntheticRecords.data(shape, 4711);
+		String schema = AvroSchemaFactory.createSchema(SyntheticRecords.FILE_NAME, SyntheticRecords.metadata(shape));
+		_mapper = new AvroRecordMapper(new Schema.Parser().parse(schema));
+		_changeLogMapper = new ChangeLogMapper(new Schema.Parser()
+				.parse(AvroSchemaFactory.createChangeLogSchema(SyntheticRecords.FILE_NAME, schema)));
+		// a few distinct rows, so the dictionaries do not hide the encoding cost
+		_rows = new GenericRecord[100];
+		for (int i = 0; i < _rows.length; i++) {
+			_rows[i] = _mapper.map(SyntheticRecords.record(shape, i));
+		}
+		_directory = Files.createTempDirectory("parquet-benchmark");
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		Files.deleteIfExists(_directory);
+	}
+
+	@Benchmark
+	public GenericRecord map() {
+		return _mapper.map(_data.getAdabasObject());
+	}
+
+	@Benchmark
+	public GenericRecord mapChangeLog() {
+		return _changeLogMapper.map("Update", _data);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS_PER_FILE)
+	public long write() throws Exception {
+		Path file = _directory.resolve("benchmark.parquet");
+		Files.deleteIfExists(file);
+		ParquetObjectWriter writer = new ParquetObjectWriter(
+				TargetAdapterOutputFile.nioPathToOutputFile(file, 0, false), file,
+				"benchmark.parquet", _mapper.getSchema(), ParquetWriter.DEFAULT_BLOCK_SIZE);
+		try {
+			for (int i = 0; i < ROWS_PER_FILE; i++) {
+				writer.write(_rows[i % _rows.length]);
+			}
+		} finally {
+			writer.close();
+		}
+		long size = Files.size(file);
+		Files.delete(file);
+		return size;
+	}
+}
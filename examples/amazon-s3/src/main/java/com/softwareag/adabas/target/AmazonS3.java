@@ -17,128 +17,541 @@ package com.softwareag.adabas.target;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
+import java.net.URI;
 import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.avro.Schema;
-import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
-import org.apache.hadoop.conf.Configuration;
-import org.apache.parquet.avro.AvroParquetWriter;
 import org.apache.parquet.hadoop.ParquetWriter;
-import org.apache.parquet.hadoop.metadata.CompressionCodecName;
 
-import com.softwareag.ada.reptor.binmessage.MetadataField;
-import com.softwareag.ada.reptor.binmessage.MetadataField.Type;
-import com.softwareag.ada.reptor.util.MetadataHandler;
-import com.softwareag.adabas.targetadapter.sdk.AbstractTarget;
 import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
 import com.softwareag.adabas.targetadapter.sdk.AdabasObjectData;
 import com.softwareag.adabas.targetadapter.sdk.IUserTarget;
 
-import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.S3Configuration;
 import software.amazon.awssdk.services.s3.model.CreateBucketRequest;
 import software.amazon.awssdk.services.s3.model.ListBucketsRequest;
 import software.amazon.awssdk.services.s3.model.ListBucketsResponse;
-import software.amazon.awssdk.services.s3.model.PutObjectRequest;
-import software.amazon.awssdk.services.s3.model.PutObjectResponse;
-import software.amazon.awssdk.services.s3.model.S3Exception;
 
 /**
  * 
  * @author Matthias Gerth, Software AG, Darmstadt, Germany
  *
  */
-public class AmazonS3 extends AbstractTarget {
+public class AmazonS3 extends ParallelDispatchTarget<AmazonS3.Row> {
 
 	private static final String BUCKET = "bucket";
 	private static final String DIRECTORY = "directory";
-
-	private HashMap<String, String> _schemaMap = new HashMap<String, String>();
+	private static final String COMMIT_THREADS = "commitThreads";
+	private static final String STREAMING = "streaming";
+	private static final String MAX_ROWS_PER_OBJECT = "maxRowsPerObject";
+	private static final String MAX_BYTES_PER_OBJECT = "maxBytesPerObject";
+	private static final String ROW_GROUP_SIZE = "rowGroupSize";
+	private static final String UPLOAD_THREADS = "uploadThreads";
+	private static final String MULTIPART_THRESHOLD = "multipartThreshold";
+	private static final String PART_SIZE = "partSize";
+	private static final String DIRECT_UPLOAD = "directUpload";
+	private static final String ENDPOINT = "endpoint";
+	private static final String IO_BUFFER_SIZE = "ioBufferSize";
+	private static final String FORCE_ON_CLOSE = "forceOnClose";
+	private static final String CHANGE_LOG_MAX_ROWS = "changeLogMaxRows";
+	private static final String CHANGE_LOG_MAX_BYTES = "changeLogMaxBytes";
+	private static final String CHANGE_LOG_MAX_AGE = "changeLogMaxAge";
+	private static final String MAX_BATCH_LATENCY = "maxBatchLatency";
+	private static final String LAYOUT_FILE = "layoutFile";
+	private static final String VIRTUAL_THREADS = "virtualThreads";
+
+	private static final long DEFAULT_MAX_ROWS_PER_OBJECT = 10000000;
+	private static final long DEFAULT_MAX_BYTES_PER_OBJECT = 512L * 1024 * 1024;
+	private static final long DEFAULT_MULTIPART_THRESHOLD = 16L * 1024 * 1024;
+	private static final long DEFAULT_PART_SIZE = 8L * 1024 * 1024;
+	private static final long DEFAULT_CHANGE_LOG_MAX_ROWS = 1000000;
+	private static final long DEFAULT_CHANGE_LOG_MAX_BYTES = 128L * 1024 * 1024;
+	private static final long DEFAULT_CHANGE_LOG_MAX_AGE = 0;
+	/**
+	 * Interval of the flusher that uploads the aged batches in milliseconds.
+	 */
+	private static final long FLUSH_INTERVAL = 1000;
+
+	private AvroSchemaFactory _schemaFactory = null;
 
 	private String _directory;
 	private String _bucket;
-	private HashMap<String, ArrayList<AdabasObject>> _populateMap = new HashMap<>();
+	/**
+	 * Populated rows per Adabas file and partition.
+	 */
+	private HashMap<String, HashMap<String, ArrayList<GenericRecord>>> _populateMap = new HashMap<>();
+	/**
+	 * Rows in {@link #_populateMap} for the metrics, read by other threads.
+	 */
+	private volatile long _populateMapRows = 0;
+	/**
+	 * Partitions and bloom filters per Adabas file.
+	 */
+	private S3Layout _layout = new S3Layout();
 	private S3Client _client = null;
+	private S3Uploader _uploader = null;
+	/**
+	 * Uploads the parts of multipart uploads, separate from the commit threads
+	 * that wait for them.
+	 */
+	private ExecutorService _uploadExecutor = null;
+	private int _uploadThreads;
+	private long _multipartThreshold = DEFAULT_MULTIPART_THRESHOLD;
+	private long _partSize = DEFAULT_PART_SIZE;
+	/**
+	 * Write the Parquet data directly to S3 without local file.
+	 */
+	private boolean _directUpload = false;
+	/**
+	 * Endpoint of an S3 compatible service instead of Amazon S3, accessed with
+	 * path-style requests.
+	 */
+	private String _endpoint = null;
+	/**
+	 * I/O buffer size of the local Parquet files, 0 derives it from the row group
+	 * size.
+	 */
+	private int _ioBufferSize = 0;
+	private boolean _forceOnClose = false;
 	private boolean _bucketExist = false;
+	/**
+	 * Writes and uploads the Parquet files of the different Adabas files of a
+	 * commit in parallel.
+	 */
+	private ExecutorService _commitExecutor = null;
+	private int _commitThreads;
+	/**
+	 * Run the commit and upload tasks on virtual threads (Java 21), the commit and
+	 * upload threads limit how many of them run at the same time.
+	 */
+	private boolean _virtualThreads = false;
+	/**
+	 * Writes and uploads that are not finished yet, commit waits for them.
+	 */
+	private ArrayDeque<Future<?>> _pending = new ArrayDeque<>();
+	private final AtomicLong _sequence = new AtomicLong();
+
+	/**
+	 * Streaming mode: the populated rows are written to an open Parquet file per
+	 * Adabas file as they arrive instead of being kept in {@link #_populateMap}
+	 * until commit.
+	 */
+	private boolean _streaming = false;
+	private long _maxRowsPerObject = DEFAULT_MAX_ROWS_PER_OBJECT;
+	private long _maxBytesPerObject = DEFAULT_MAX_BYTES_PER_OBJECT;
+	private int _rowGroupSize = ParquetWriter.DEFAULT_BLOCK_SIZE;
+	/**
+	 * Maximum latency of populated rows in milliseconds. With 0 every commit
+	 * uploads its own objects, otherwise the rows of several commits are
+	 * collected in one object per Adabas file.
+	 */
+	private long _maxBatchLatency = 0;
+	private ParquetBatcher _populateBatcher = null;
+
+	/**
+	 * Open change-log files per Adabas file. By default every commit uploads its
+	 * changes, with a maximum age they collect the changes of several commits and
+	 * are uploaded when they reach the row or byte limit or the maximum age.
+	 */
+	private ParquetBatcher _changeLogBatcher = null;
+	private long _changeLogMaxRows = DEFAULT_CHANGE_LOG_MAX_ROWS;
+	private long _changeLogMaxBytes = DEFAULT_CHANGE_LOG_MAX_BYTES;
+	private long _changeLogMaxAge = DEFAULT_CHANGE_LOG_MAX_AGE * 1000;
+	/**
+	 * Uploads the batches that reached their maximum latency, also without
+	 * commits.
+	 */
+	private ScheduledExecutorService _flusher = null;
+	/**
+	 * Time to finish and upload an object and the bytes uploaded, null without
+	 * metrics.
+	 */
+	private LatencyHistogram _uploadLatency = null;
+	private LongAdder _bytesUploaded = null;
 	// private Region _region = Region.EU_CENTRAL_1;
 
 	@Override
 	public IUserTarget setParameter(String targetName, HashMap<String, String> parameter) throws Exception {
+		_schemaFactory = createSchemaFactory();
 		if (parameter.containsKey(BUCKET)) {
 			_bucket = parameter.get(BUCKET);
 		} else {
 			throw new Exception("Directory not set.");
 		}
+		if (parameter.containsKey(DIRECT_UPLOAD)) {
+			_directUpload = Boolean.parseBoolean(parameter.get(DIRECT_UPLOAD));
+		}
 		if (parameter.containsKey(DIRECTORY)) {
 			_directory = parameter.get(DIRECTORY);
-		} else {
+		} else if (!_directUpload) {
 			throw new Exception("Directory not set.");
 		}
+		if (parameter.containsKey(ENDPOINT) && !parameter.get(ENDPOINT).isEmpty()) {
+			_endpoint = parameter.get(ENDPOINT);
+		}
+		_commitThreads = (int) getNumber(parameter, COMMIT_THREADS,
+				Math.min(4, Runtime.getRuntime().availableProcessors()));
+		if (parameter.containsKey(STREAMING)) {
+			_streaming = Boolean.parseBoolean(parameter.get(STREAMING));
+		}
+		_maxRowsPerObject = getNumber(parameter, MAX_ROWS_PER_OBJECT, DEFAULT_MAX_ROWS_PER_OBJECT);
+		_maxBytesPerObject = getNumber(parameter, MAX_BYTES_PER_OBJECT, DEFAULT_MAX_BYTES_PER_OBJECT);
+		_rowGroupSize = (int) getNumber(parameter, ROW_GROUP_SIZE, ParquetWriter.DEFAULT_BLOCK_SIZE);
+		_ioBufferSize = (int) Math.min(getNumber(parameter, IO_BUFFER_SIZE, 0, 0),
+				TargetAdapterOutputFile.MAX_IO_BUF_SIZE);
+		if (parameter.containsKey(FORCE_ON_CLOSE)) {
+			_forceOnClose = Boolean.parseBoolean(parameter.get(FORCE_ON_CLOSE));
+		}
+		_changeLogMaxRows = getNumber(parameter, CHANGE_LOG_MAX_ROWS, DEFAULT_CHANGE_LOG_MAX_ROWS);
+		_changeLogMaxBytes = getNumber(parameter, CHANGE_LOG_MAX_BYTES, DEFAULT_CHANGE_LOG_MAX_BYTES);
+		_changeLogMaxAge = getNumber(parameter, CHANGE_LOG_MAX_AGE, DEFAULT_CHANGE_LOG_MAX_AGE, 0) * 1000;
+		_maxBatchLatency = getNumber(parameter, MAX_BATCH_LATENCY, 0, 0) * 1000;
+		if (parameter.containsKey(LAYOUT_FILE) && !parameter.get(LAYOUT_FILE).isEmpty()) {
+			File file = new File(parameter.get(LAYOUT_FILE));
+			Properties layout = new Properties();
+			try (FileInputStream in = new FileInputStream(file)) {
+				layout.load(in);
+			}
+			_layout = new S3Layout(layout);
+		}
+		setDispatchParameter(parameter);
+		setCoalescing(parameter.containsKey(COALESCE) && Boolean.parseBoolean(parameter.get(COALESCE)));
+		_uploadThreads = (int) getNumber(parameter, UPLOAD_THREADS, 4);
+		_multipartThreshold = getNumber(parameter, MULTIPART_THRESHOLD, DEFAULT_MULTIPART_THRESHOLD);
+		_partSize = getNumber(parameter, PART_SIZE, DEFAULT_PART_SIZE);
+		if (_partSize < S3Uploader.MIN_PART_SIZE) {
+			throw new Exception("Part size must be at least " + S3Uploader.MIN_PART_SIZE + ".");
+		}
+		if (parameter.containsKey(VIRTUAL_THREADS)) {
+			_virtualThreads = Boolean.parseBoolean(parameter.get(VIRTUAL_THREADS));
+		}
+		_commitExecutor = SinkExecutors.newExecutor("AmazonS3-commit-", _commitThreads, _virtualThreads);
+		_uploadExecutor = SinkExecutors.newExecutor("AmazonS3-upload-", _uploadThreads, _virtualThreads);
+		// a failed direct upload cannot be repeated, its objects must not hold
+		// committed rows
+		_populateBatcher = new ParquetBatcher(this::newWriter, this::closeAndUpload, _commitExecutor, _commitThreads,
+				_maxRowsPerObject, _maxBytesPerObject, _directUpload ? 0 : _maxBatchLatency);
+		_changeLogBatcher = new ParquetBatcher(this::newChangeLogWriter, this::closeAndUpload, _commitExecutor,
+				_commitThreads, _changeLogMaxRows, _changeLogMaxBytes, _directUpload ? 0 : _changeLogMaxAge);
+		_flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "AmazonS3-flusher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		_flusher.scheduleWithFixedDelay(() -> {
+			_populateBatcher.rollAged();
+			_changeLogBatcher.rollAged();
+		}, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
 		return this;
 	}
 
+	/**
+	 * Create the schema factory, the load harness replaces the metadata of the
+	 * Target Adapter by synthetic metadata.
+	 *
+	 * @return the schema factory
+	 */
+	protected AvroSchemaFactory createSchemaFactory() {
+		return new AvroSchemaFactory();
+	}
+
 	@Override
-	public boolean commit(String transactionId) throws Exception {
-		if (!_populateMap.isEmpty()) {
-			for (Entry<String, ArrayList<AdabasObject>> entry : _populateMap.entrySet()) {
-				Schema schema = new Schema.Parser().parse(getSchema(entry.getKey()));
-				String path = "adabas/" + entry.getKey().toLowerCase() + "/";
-				String objectKey = "p" + System.currentTimeMillis() + ".parquet";
-				Path file = FileSystems.getDefault().getPath(_directory + "/" + objectKey);
-
-				Configuration conf = new Configuration();
-				try (ParquetWriter<GenericRecord> parquetWriter = AvroParquetWriter
-						.<GenericRecord>builder(TargetAdapterOutputFile.nioPathToOutputFile(file)).withSchema(schema)
-						.withConf(conf).withCompressionCodec(CompressionCodecName.SNAPPY).build()) {
-					for (AdabasObject ao : entry.getValue()) {
-						parquetWriter.write(getGenericRecord(ao, schema, entry.getKey()));
-					}
+	protected boolean commitTransaction(String transactionId) throws Exception {
+		try {
+			// kept files of failed uploads fail the commit before anything of it is
+			// uploaded
+			_populateBatcher.prepareCommit();
+			_changeLogBatcher.prepareCommit();
+			for (Entry<String, HashMap<String, ArrayList<GenericRecord>>> entry : _populateMap.entrySet()) {
+				for (Entry<String, ArrayList<GenericRecord>> partition : entry.getValue().entrySet()) {
+					_pending.add(_commitExecutor.submit(() -> {
+						writeObject(entry.getKey(), partition.getKey(), partition.getValue());
+						return null;
+					}));
 				}
-
-				putS3Object(_bucket, path + objectKey, file.toString());
 			}
 			_populateMap.clear();
+			_populateMapRows = 0;
+			awaitPending(0);
+			_populateBatcher.commit();
+			_changeLogBatcher.commit();
+			return true;
+		} catch (Exception e) {
+			// the transaction is delivered again
+			discardTransaction();
+			throw e;
 		}
-		return true;
 	}
 
+	/**
+	 * Drop the populated rows kept until commit and the rows of the transaction
+	 * in the batched objects.
+	 */
 	@Override
-	public void create(AdabasObjectData data) throws Exception {
-		printConsole("Create", data);
+	protected void discardTransaction() {
+		_populateMap.clear();
+		_populateMapRows = 0;
+		_populateBatcher.abort();
+		_changeLogBatcher.abort();
 	}
 
-	@Override
-	public void delete(AdabasObjectData data) throws Exception {
-		printConsole("Delete", data);
+	/**
+	 * Wait for pending writes and uploads until at most <code>limit</code> are
+	 * left. All of them are awaited even if one fails, the first failure is
+	 * thrown afterwards.
+	 *
+	 * @param limit number of pending tasks that may remain
+	 */
+	private void awaitPending(int limit) throws Exception {
+		Exception error = null;
+		while (_pending.size() > limit) {
+			try {
+				_pending.poll().get();
+			} catch (ExecutionException e) {
+				if (error == null) {
+					error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+				}
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	/**
+	 * Write the data of one partition of an Adabas file into a Parquet file and
+	 * upload it. Runs on a commit thread.
+	 *
+	 * @param table     the file name
+	 * @param partition the partition path
+	 * @param list      the rows
+	 */
+	private void writeObject(String table, String partition, ArrayList<GenericRecord> list) throws Exception {
+		ParquetObjectWriter writer = newWriter(table, partition);
+		try {
+			for (GenericRecord record : list) {
+				writer.write(record);
+			}
+			closeAndUpload(writer);
+		} catch (Exception e) {
+			// the commit fails and the rows are written again, drop the file
+			try {
+				writer.close();
+			} catch (Exception closeError) {
+				// the file is dropped anyway
+			}
+			if (writer.getFile() != null) {
+				Files.deleteIfExists(writer.getFile());
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Close the writer and upload its local file, the file is deleted once it is
+	 * uploaded.
+	 */
+	private void closeAndUpload(ParquetObjectWriter writer) throws Exception {
+		long start = System.nanoTime();
+		// a direct upload is finished by close, its size is known before
+		long size = writer.getDataSize();
+		writer.close();
+		if (writer.getFile() != null) {
+			size = Files.size(writer.getFile());
+			getUploader().upload(_bucket, writer.getObjectKey(), writer.getFile());
+			Files.delete(writer.getFile());
+		}
+		if (_uploadLatency != null) {
+			_uploadLatency.record(System.nanoTime() - start);
+			_bytesUploaded.add(size);
+		}
+	}
+
+	/**
+	 * @param table     the file name
+	 * @param partition the partition path
+	 * @return a writer for a new Parquet object of the Adabas file
+	 */
+	private ParquetObjectWriter newWriter(String table, String partition) throws Exception {
+		return newWriter(table, _schemaFactory.getMapper(table).getSchema(),
+				"adabas/" + table.toLowerCase() + "/" + partition, "p",
+				_layout.getLayout(table).getBloomFilterColumns());
+	}
+
+	/**
+	 * @param table     the file name
+	 * @param partition the partition path
+	 * @return a writer for a new change-log object of the Adabas file
+	 */
+	private ParquetObjectWriter newChangeLogWriter(String table, String partition) throws Exception {
+		// the fields of the file are nested in the after image
+		ArrayList<String> bloomFilterColumns = new ArrayList<>();
+		for (String column : _layout.getLayout(table).getBloomFilterColumns()) {
+			bloomFilterColumns.add(ChangeLogMapper.AFTER + "." + column);
+		}
+		return newWriter(table, _schemaFactory.getChangeLogMapper(table).getSchema(),
+				"adabas/" + table.toLowerCase() + "/changelog/" + partition, "c", bloomFilterColumns);
 	}
 
+	/**
+	 * @param table              the file name
+	 * @param schema             the schema of the rows
+	 * @param path               the path of the object in the bucket
+	 * @param prefix             the prefix of the object name
+	 * @param bloomFilterColumns the columns with bloom filters
+	 * @return a writer for a new Parquet object
+	 */
+	private ParquetObjectWriter newWriter(String table, Schema schema, String path, String prefix,
+			List<String> bloomFilterColumns) throws Exception {
+		// the sequence number makes the names unique and sortable in the order of creation
+		String objectKey = String.format("%s%d-%06d.parquet", prefix, System.currentTimeMillis(),
+				_sequence.incrementAndGet());
+		if (_directUpload) {
+			return new ParquetObjectWriter(new S3OutputFile(getClient(), _uploadExecutor, _bucket, path + objectKey,
+					_partSize, _uploadThreads), null, path + objectKey, schema, _rowGroupSize, bloomFilterColumns);
+		}
+		Path file = FileSystems.getDefault().getPath(_directory + "/" + table.toLowerCase() + "-" + objectKey);
+		return new ParquetObjectWriter(
+				TargetAdapterOutputFile.nioPathToOutputFile(file, _ioBufferSize, _forceOnClose), file,
+				path + objectKey, schema, _rowGroupSize, bloomFilterColumns);
+	}
+
+	/**
+	 * Map the Adabas data to the Parquet row and its partition, runs on a dispatch
+	 * thread. Changes are partitioned by the after image, deletes by the before
+	 * image.
+	 */
 	@Override
-	public void insert(AdabasObjectData data) throws Exception {
-		printConsole("Insert", data);
+	protected Row transform(String operation, AdabasObjectData data) throws Exception {
+		printConsole(operation, data);
+		String table = data.getFileName();
+		switch (operation) {
+			case "Populate":
+				return new Row(_layout.getLayout(table).getPartition(data, data.getAdabasObject()),
+						_schemaFactory.getMapper(table).map(data.getAdabasObject()));
+			case "Insert":
+			case "Update":
+			case "Delete":
+				AdabasObject ao = data.getAdabasObject() != null ? data.getAdabasObject() : data.getBeforeObject();
+				return new Row(_layout.getLayout(table).getPartition(data, ao),
+						_schemaFactory.getChangeLogMapper(table).map(operation, data));
+			default:
+				return null;
+		}
 	}
 
 	@Override
-	public void populate(AdabasObjectData data) throws Exception {
-		printConsole("Populate", data);
-		putDataInMap(data, _populateMap);
+	protected void emit(String operation, AdabasObjectData data, Row row) throws Exception {
+		if (row == null) {
+			return;
+		}
+		String table = data.getFileName();
+		if (!operation.equals("Populate")) {
+			_changeLogBatcher.write(table, row.partition, row.record);
+		} else if (_streaming || _maxBatchLatency > 0) {
+			_populateBatcher.write(table, row.partition, row.record);
+		} else {
+			putDataInMap(table, row, _populateMap);
+			_populateMapRows++;
+		}
 	}
 
 	@Override
-	public void update(AdabasObjectData data) throws Exception {
-		printConsole("Update", data);
+	public void setMetrics(TargetMetrics metrics) {
+		super.setMetrics(metrics);
+		_uploadLatency = metrics.histogram("adabas_target_s3_upload_seconds",
+				"Time to finish a Parquet object and upload it.");
+		_bytesUploaded = metrics.counter("adabas_target_s3_bytes_total", "Bytes of the uploaded Parquet objects.");
+		metrics.gauge("adabas_target_s3_buffered_rows", "Populated rows kept until commit.",
+				() -> _populateMapRows);
+		metrics.gauge("adabas_target_s3_lost_rows", "Committed rows whose batched object could not be uploaded.",
+				() -> (_populateBatcher != null ? _populateBatcher.getLostRows() : 0)
+						+ (_changeLogBatcher != null ? _changeLogBatcher.getLostRows() : 0));
 	}
 
 	@Override
 	public Object[][] getMetadata() {
-		return new Object[][] { { BUCKET, "Bucket-Name", ParameterType.String },
-				{ DIRECTORY, "Directory", ParameterType.Directory } };
+		return withDispatchMetadata(new Object[][] { { BUCKET, "Bucket-Name", ParameterType.String },
+				{ DIRECTORY, "Directory", ParameterType.Directory },
+				{ COMMIT_THREADS, "Commit Threads", ParameterType.Integer },
+				{ STREAMING, "Streaming Mode", ParameterType.Boolean },
+				{ MAX_ROWS_PER_OBJECT, "Maximum Rows per Object", ParameterType.Integer },
+				{ MAX_BYTES_PER_OBJECT, "Maximum Bytes per Object", ParameterType.Integer },
+				{ ROW_GROUP_SIZE, "Parquet Row Group Size", ParameterType.Integer },
+				{ UPLOAD_THREADS, "Upload Threads", ParameterType.Integer },
+				{ MULTIPART_THRESHOLD, "Multipart Threshold", ParameterType.Integer },
+				{ PART_SIZE, "Part Size", ParameterType.Integer },
+				{ DIRECT_UPLOAD, "Direct Upload", ParameterType.Boolean },
+				{ ENDPOINT, "Endpoint", ParameterType.String },
+				{ IO_BUFFER_SIZE, "I/O Buffer Size", ParameterType.Integer },
+				{ FORCE_ON_CLOSE, "Force on Close", ParameterType.Boolean },
+				{ CHANGE_LOG_MAX_ROWS, "Change Log Maximum Rows", ParameterType.Integer },
+				{ CHANGE_LOG_MAX_BYTES, "Change Log Maximum Bytes", ParameterType.Integer },
+				{ CHANGE_LOG_MAX_AGE, "Change Log Maximum Age (s)", ParameterType.Integer },
+				{ MAX_BATCH_LATENCY, "Maximum Batch Latency (s)", ParameterType.Integer },
+				{ LAYOUT_FILE, "Layout File", ParameterType.File },
+				{ VIRTUAL_THREADS, "Virtual Threads", ParameterType.Boolean },
+				{ COALESCE, "Coalesce Operations", ParameterType.Boolean } });
+	}
+
+	@Override
+	public void close() throws Exception {
+		if (_flusher != null) {
+			_flusher.shutdown();
+		}
+		if (_commitExecutor != null) {
+			try {
+				// drop the rows of an unfinished transaction, upload the committed
+				// rows collected since the last upload
+				_populateBatcher.abort();
+				_changeLogBatcher.abort();
+				_populateBatcher.rollAll();
+				_changeLogBatcher.rollAll();
+				_populateBatcher.retryFailed();
+				_changeLogBatcher.retryFailed();
+				try {
+					_populateBatcher.awaitPending(0);
+				} finally {
+					_changeLogBatcher.awaitPending(0);
+				}
+			} catch (Exception e) {
+				ArrayList<String> files = _populateBatcher.getFailedFiles();
+				files.addAll(_changeLogBatcher.getFailedFiles());
+				if (files.isEmpty()) {
+					throw e;
+				}
+				throw new Exception("Upload failed, the files " + files + " are kept in " + _directory + ": "
+						+ e.getMessage(), e);
+			} finally {
+				_commitExecutor.shutdown();
+			}
+		}
+		if (_uploadExecutor != null) {
+			_uploadExecutor.shutdown();
+		}
+		if (_client != null) {
+			_client.close();
+		}
+		super.close();
 	}
 
 	@Override
@@ -162,173 +575,57 @@ public class AmazonS3 extends AbstractTarget {
 		return true;
 	}
 
-	private S3Client getClient() {
+	private synchronized S3Client getClient() {
 		if (_client == null) {
-			_client = S3Client.builder().build();
-		}
-		return _client;
-	}
-
-	private void putDataInMap(AdabasObjectData data, HashMap<String, ArrayList<AdabasObject>> map) throws Exception {
-		if (!map.containsKey(data.getFileName())) {
-			map.put(data.getFileName(), new ArrayList<AdabasObject>());
-		}
-		ArrayList<AdabasObject> list = map.get(data.getFileName());
-		list.add(data.getAdabasObject());
-	}
-
-	private String getFields(String table) throws Exception {
-		StringBuilder sb = new StringBuilder("[");
-		addField(sb, "ISN", "long", false);
-		for (Entry<String, MetadataField> entry : MetadataHandler.getHandler().getMetadataMap(table).entrySet()) {
-			// System.out.println(entry.getKey() + " > " + entry.getValue());
-			MetadataField field = entry.getValue();
-			String type = null;
-			if (field.getType() == Type.BASE) {
-				switch (field.getFormat()) {
-					case STRING:
-						type = "string";
-						break;
-					case DECIMAL:
-					case INTEGER:
-						type = "int";
-						break;
-					case FLOAT:
-						type = "float";
-						break;
-					case BINARY:
-						type = "bytes";
-						break;
-					default:
-						break;
-				}
-				if (type != null) {
-					addField(sb, field.getName(), type);
-				}
+			S3ClientBuilder builder = S3Client.builder();
+			if (_endpoint != null) {
+				builder.endpointOverride(URI.create(_endpoint))
+						.serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(true).build());
 			}
+			_client = builder.build();
 		}
-		sb.append("]");
-		return sb.toString();
-	}
-
-	private String getSchema(String table) throws Exception {
-		if (!_schemaMap.containsKey(table)) {
-			StringBuilder sb = new StringBuilder("{");
-			addPair(sb, "type", "record", false);
-			addPair(sb, "name", table);
-			addPair(sb, "namespace", "com.softwareag.adabas");
-			sb.append(",").append("\"fields\":").append(getFields(table));
-			sb.append("}");
-			_schemaMap.put(table, sb.toString());
-		}
-		return _schemaMap.get(table);
-	}
-
-	private void addField(StringBuilder sb, String name, String type) {
-		addField(sb, name, type, true);
+		return _client;
 	}
 
-	private void addField(StringBuilder sb, String name, String type, boolean comma) {
-		if (comma) {
-			sb.append(",");
+	private synchronized S3Uploader getUploader() {
+		if (_uploader == null) {
+			_uploader = new S3Uploader(getClient(), _uploadExecutor, _multipartThreshold, _partSize);
 		}
-		sb.append('{');
-		addPair(sb, "name", name, false);
-		addPair(sb, "type", type);
-		sb.append('}');
-	}
-
-	private void addPair(StringBuilder sb, String key, String value) {
-		addPair(sb, key, value, true);
+		return _uploader;
 	}
 
-	private void addPair(StringBuilder sb, String key, String value, boolean comma) {
-		if (comma) {
-			sb.append(",");
-		}
-		sb.append("\"").append(key).append("\":\"").append(value).append("\"");
+	private static long getNumber(HashMap<String, String> parameter, String name, long defaultValue)
+			throws Exception {
+		return getNumber(parameter, name, defaultValue, 1);
 	}
 
-	private GenericRecord getGenericRecord(AdabasObject ao, Schema schema, String table) throws Exception {
-		GenericRecord record = new GenericData.Record(schema);
-		record.put("ISN", ao.evaluateValue("ISN"));
-		for (Entry<String, MetadataField> entry : MetadataHandler.getHandler().getMetadataMap(table).entrySet()) {
-			MetadataField field = entry.getValue();
-			if (field.getType() == Type.BASE) {
-				record.put(field.getName(), getObject(field, ao));
-			}
+	/**
+	 * @param minimum the smallest valid value, 0 or 1
+	 */
+	private static long getNumber(HashMap<String, String> parameter, String name, long defaultValue, long minimum)
+			throws Exception {
+		String value = parameter.get(name);
+		if (value == null || value.isEmpty()) {
+			return defaultValue;
 		}
-		return record;
-	}
-
-	private Object getObject(MetadataField field, AdabasObject ao) {
-		if (ao.getKeys().contains(field.getName())) {
-			return ao.evaluateValue(field.getName());
-		} else {
-			switch (field.getFormat()) {
-				case DECIMAL:
-				case INTEGER:
-					return 0;
-				case FLOAT:
-					return 0.0;
-				case BINARY:
-					return 0x00;
-				default:
-					break;
-			}
-
+		long number = Long.parseLong(value);
+		if (number < minimum) {
+			throw new Exception("Parameter " + name
+					+ (minimum == 0 ? " must not be negative." : " must be greater than " + (minimum - 1) + "."));
 		}
-		return "";
+		return number;
 	}
 
-	private String putS3Object(String bucketName, String objectKey, String objectPath) {
-
-		try {
-			// Put a file into the bucket
-			PutObjectResponse response = getClient().putObject(
-					PutObjectRequest.builder().bucket(bucketName).key(objectKey).build(),
-					RequestBody.fromBytes(getObjectFile(objectPath)));
-
-			return response.eTag();
-
-		} catch (S3Exception | FileNotFoundException e) {
-			System.err.println(e.getMessage());
-			System.exit(1);
+	private void putDataInMap(String table, Row row, HashMap<String, HashMap<String, ArrayList<GenericRecord>>> map)
+			throws Exception {
+		if (!map.containsKey(table)) {
+			map.put(table, new HashMap<String, ArrayList<GenericRecord>>());
 		}
-		return "";
-	}
-
-	private byte[] getObjectFile(String path) throws FileNotFoundException {
-
-		byte[] bFile = readBytesFromFile(path);
-		return bFile;
-	}
-
-	private byte[] readBytesFromFile(String filePath) {
-
-		FileInputStream fileInputStream = null;
-		byte[] bytesArray = null;
-
-		try {
-			File file = new File(filePath);
-			bytesArray = new byte[(int) file.length()];
-
-			// read file into bytes[]
-			fileInputStream = new FileInputStream(file);
-			fileInputStream.read(bytesArray);
-
-		} catch (IOException e) {
-			e.printStackTrace();
-		} finally {
-			if (fileInputStream != null) {
-				try {
-					fileInputStream.close();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
-			}
+		HashMap<String, ArrayList<GenericRecord>> partitions = map.get(table);
+		if (!partitions.containsKey(row.partition)) {
+			partitions.put(row.partition, new ArrayList<GenericRecord>());
 		}
-		return bytesArray;
+		partitions.get(row.partition).add(row.record);
 	}
 
 	private void printConsole(String operation, AdabasObjectData data) throws Exception {
@@ -337,4 +634,17 @@ public class AmazonS3 extends AbstractTarget {
 		// + data.getAdabasObject());
 	}
 
+	/**
+	 * A Parquet row with its partition path.
+	 */
+	static class Row {
+		private final String partition;
+		private final GenericRecord record;
+
+		private Row(String partition, GenericRecord record) {
+			this.partition = partition;
+			this.record = record;
+		}
+	}
+
 }
\ No newline at end of file
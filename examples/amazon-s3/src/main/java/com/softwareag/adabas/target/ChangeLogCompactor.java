@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.avro.AvroParquetReader;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.ParquetWriter;
+
+/**
+ * Merges the Parquet objects of one Adabas file into a new snapshot: an
+ * optional snapshot (populate) and the change logs written by the Amazon S3
+ * User Target. Inserts and updates replace the row with the ISN by the after
+ * image, deletes remove it. The snapshot is written sorted by ISN.
+ * <p>
+ * The changes are applied in the order of their commit date and transaction
+ * id, not in the order of the files: with partitions the changes of one ISN
+ * are spread over several objects that are written in parallel. The changes of
+ * one transaction are applied in the order of the objects (time and sequence
+ * number in the object name) and of the rows in the object. Changes without
+ * ISN cannot be related to a row, they are skipped and counted.
+ * <p>
+ * All rows are kept in memory while merging.
+ *
+ * <pre>
+ * java -cp "lib/*" com.softwareag.adabas.target.ChangeLogCompactor &lt;output file&gt; &lt;input file&gt;...
+ * </pre>
+ */
+public class ChangeLogCompactor {
+
+	/**
+	 * Time and sequence number of an object name: c&lt;time&gt;-&lt;sequence&gt;.parquet.
+	 */
+	private static final Pattern OBJECT_NAME = Pattern.compile("(\\d+)-(\\d+)\\.parquet$");
+
+	private static final Comparator<Change> ORDER = Comparator
+			.comparingLong((Change change) -> change.commitDate)
+			.thenComparing((a, b) -> compareTransactionIds(a.transactionId, b.transactionId))
+			.thenComparingLong(change -> change.fileTime)
+			.thenComparingLong(change -> change.fileSequence)
+			.thenComparingInt(change -> change.fileIndex)
+			.thenComparingLong(change -> change.row);
+
+	private final TreeMap<Long, GenericRecord> _rows = new TreeMap<>();
+	/**
+	 * Changes read but not applied yet, they are sorted before they are applied.
+	 */
+	private final ArrayList<Change> _pending = new ArrayList<>();
+	private int _fileCount = 0;
+	private Schema _schema = null;
+	private long _changes = 0;
+	private long _deletes = 0;
+	private long _skipped = 0;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err.println("Usage: ChangeLogCompactor <output file> <snapshot or change-log file>...");
+			System.exit(1);
+		}
+		ChangeLogCompactor compactor = new ChangeLogCompactor();
+		for (int i = 1; i < args.length; i++) {
+			compactor.add(Paths.get(args[i]));
+		}
+		long rows = compactor.write(Paths.get(args[0]), ParquetWriter.DEFAULT_BLOCK_SIZE);
+		System.out.println("Snapshot " + args[0] + " written: " + rows + " rows, " + compactor._changes
+				+ " inserts/updates and " + compactor._deletes + " deletes applied, " + compactor._skipped
+				+ " changes without ISN skipped.");
+	}
+
+	/**
+	 * Read a snapshot or change-log file. The rows of a snapshot are taken at
+	 * once, the changes are applied by {@link #write(Path, int)}.
+	 *
+	 * @param file the local Parquet file
+	 */
+	public void add(Path file) throws IOException {
+		int fileIndex = _fileCount++;
+		Matcher matcher = OBJECT_NAME.matcher(file.getFileName().toString());
+		long fileTime = matcher.find() ? Long.parseLong(matcher.group(1)) : 0;
+		long fileSequence = fileTime > 0 ? Long.parseLong(matcher.group(2)) : 0;
+		try (ParquetReader<GenericRecord> reader = AvroParquetReader
+				.<GenericRecord>builder(TargetAdapterInputFile.nioPathToInputFile(file)).withConf(new Configuration())
+				.build()) {
+			GenericRecord record;
+			long row = 0;
+			while ((record = reader.read()) != null) {
+				if (ChangeLogMapper.isChangeLog(record.getSchema())) {
+					_pending.add(new Change(record, fileTime, fileSequence, fileIndex, row++));
+				} else {
+					put(record);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Apply the changes read so far in the order of the changes.
+	 */
+	private void applyPending() {
+		_pending.sort(ORDER);
+		for (Change change : _pending) {
+			apply(change.record);
+		}
+		_pending.clear();
+	}
+
+	private void apply(GenericRecord change) {
+		Object value = change.get(ChangeLogMapper.ISN);
+		if (value == null) {
+			_skipped++;
+			return;
+		}
+		long isn = ((Number) value).longValue();
+		if ("Delete".equals(change.get(ChangeLogMapper.OP).toString())) {
+			_rows.remove(isn);
+			_deletes++;
+		} else {
+			GenericRecord after = (GenericRecord) change.get(ChangeLogMapper.AFTER);
+			if (after != null) {
+				put(isn, after);
+				_changes++;
+			}
+		}
+	}
+
+	private void put(GenericRecord row) {
+		put(((Number) row.get(ChangeLogMapper.ISN)).longValue(), row);
+	}
+
+	private void put(long isn, GenericRecord row) {
+		if (_schema == null) {
+			_schema = row.getSchema();
+		} else if (!_schema.equals(row.getSchema())) {
+			throw new IllegalStateException("Schema " + row.getSchema().getFullName()
+					+ " differs from the schema of the previous files, the files cannot be merged.");
+		}
+		_rows.put(isn, row);
+	}
+
+	/**
+	 * @param file         the new snapshot
+	 * @param rowGroupSize the Parquet row group size in bytes
+	 * @return the number of rows written, no file is written without rows
+	 */
+	public long write(Path file, int rowGroupSize) throws IOException {
+		applyPending();
+		if (_rows.isEmpty()) {
+			return 0;
+		}
+		try (ParquetObjectWriter writer = new ParquetObjectWriter(file, file.getFileName().toString(), _schema,
+				rowGroupSize)) {
+			for (GenericRecord row : _rows.values()) {
+				writer.write(row);
+			}
+			return writer.getRowCount();
+		}
+	}
+
+	/**
+	 * Numeric transaction ids are compared as numbers, others as strings.
+	 */
+	private static int compareTransactionIds(String a, String b) {
+		if (a == null || b == null) {
+			return a == null ? (b == null ? 0 : -1) : 1;
+		}
+		if (a.length() != b.length() && isNumber(a) && isNumber(b)) {
+			return Integer.compare(a.length(), b.length());
+		}
+		return a.compareTo(b);
+	}
+
+	private static boolean isNumber(String value) {
+		if (value.isEmpty() || value.charAt(0) == '0') {
+			return false;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			if (value.charAt(i) < '0' || value.charAt(i) > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * A change-log row with its position.
+	 */
+	private static class Change {
+		private final GenericRecord record;
+		private final long commitDate;
+		private final String transactionId;
+		private final long fileTime;
+		private final long fileSequence;
+		private final int fileIndex;
+		private final long row;
+
+		private Change(GenericRecord record, long fileTime, long fileSequence, int fileIndex, long row) {
+			this.record = record;
+			Object date = record.get(ChangeLogMapper.COMMIT_DATE);
+			// without logical type conversion the date is a long
+			commitDate = date instanceof Number ? ((Number) date).longValue()
+					: date instanceof Instant ? ((Instant) date).toEpochMilli() : Long.MIN_VALUE;
+			Object id = record.get(ChangeLogMapper.TRANSACTION_ID);
+			transactionId = id == null ? null : id.toString();
+			this.fileTime = fileTime;
+			this.fileSequence = fileSequence;
+			this.fileIndex = fileIndex;
+			this.row = row;
+		}
+	}
+}
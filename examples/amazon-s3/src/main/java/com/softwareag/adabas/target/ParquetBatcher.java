@@ -0,0 +1,419 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.avro.generic.GenericRecord;
+
+/**
+ * Batching of Parquet objects: the rows of a transaction are written to one
+ * open Parquet object per Adabas file and partition. Objects are only closed
+ * and uploaded at commit boundaries, so that an object never holds rows of a
+ * transaction that is rolled back.
+ * <p>
+ * Without maximum latency {@link #commit()} uploads all objects of the
+ * transaction and waits for them, the commit is acknowledged when its rows are
+ * in S3. With maximum latency (opt-in) the objects collect the rows of several
+ * commits and are uploaded in the background when they reach the row or byte
+ * limit at a commit or the maximum latency, the age of their first row. The
+ * rows of a transaction for an object that holds committed rows are staged in
+ * memory until commit; if the transaction has many of them, the committed
+ * object is uploaded and the transaction continues in a new object.
+ * {@link #abort()} drops the staged rows and the objects of the transaction.
+ * <p>
+ * If the upload of an object with committed rows fails, its complete local
+ * file is kept and uploaded again by {@link #prepareCommit()}, which fails
+ * until the upload succeeds. If the rows cannot be kept, they are counted as
+ * lost and the failure is thrown once.
+ * <p>
+ * Rows are written by the target thread and aged objects are rolled by the
+ * flusher thread, the methods are synchronized.
+ */
+public class ParquetBatcher {
+
+	/**
+	 * Number of staged rows of a transaction for an object, above it the
+	 * transaction continues in a new object.
+	 */
+	private static final int STAGE_LIMIT = 1000;
+
+	/**
+	 * Creates the writer of a new object.
+	 */
+	public interface WriterFactory {
+		ParquetObjectWriter newWriter(String table, String partition) throws Exception;
+	}
+
+	/**
+	 * Closes the writer and uploads the object, runs on the executor. A writer
+	 * whose upload failed is passed again, it is already closed.
+	 */
+	public interface Uploader {
+		void closeAndUpload(ParquetObjectWriter writer) throws Exception;
+	}
+
+	private final HashMap<String, ParquetObjectWriter> _writerMap = new HashMap<>();
+	/**
+	 * Rows of the transaction for objects that hold committed rows.
+	 */
+	private final HashMap<String, Staged> _stagedMap = new HashMap<>();
+	private final ArrayDeque<Upload> _pending = new ArrayDeque<>();
+	private final ArrayList<ParquetObjectWriter> _failed = new ArrayList<>();
+	private volatile long _lostRows = 0;
+	private final WriterFactory _factory;
+	private final Uploader _uploader;
+	private final ExecutorService _executor;
+	private final int _maxPending;
+	private final long _maxRows;
+	private final long _maxBytes;
+	private final long _maxLatency;
+
+	/**
+	 * @param factory    creates the writers
+	 * @param uploader   closes and uploads the objects
+	 * @param executor   the threads running the uploads
+	 * @param maxPending number of uploads that may be pending before a write
+	 *                   waits
+	 * @param maxRows    maximum rows per object collected over several commits
+	 * @param maxBytes   maximum bytes per object collected over several commits
+	 * @param maxLatency maximum age of an open object in milliseconds, 0 uploads
+	 *                   the objects on every commit
+	 */
+	public ParquetBatcher(WriterFactory factory, Uploader uploader, ExecutorService executor, int maxPending,
+			long maxRows, long maxBytes, long maxLatency) {
+		_factory = factory;
+		_uploader = uploader;
+		_executor = executor;
+		_maxPending = maxPending;
+		_maxRows = maxRows;
+		_maxBytes = maxBytes;
+		_maxLatency = maxLatency;
+	}
+
+	/**
+	 * Write the row of the transaction to the open object of the Adabas file and
+	 * partition, or stage it if the object holds committed rows.
+	 *
+	 * @param table     the file name
+	 * @param partition the partition path, see {@link S3Layout}
+	 * @param record    the row
+	 */
+	public void write(String table, String partition, GenericRecord record) throws Exception {
+		String key = table + "/" + partition;
+		synchronized (this) {
+			ParquetObjectWriter writer = _writerMap.get(key);
+			Staged staged = _stagedMap.get(key);
+			if (staged == null && writer != null && writer.getCommittedRowCount() > 0) {
+				staged = new Staged(table, partition);
+				_stagedMap.put(key, staged);
+			}
+			if (staged == null) {
+				if (writer == null) {
+					writer = newWriter(key, table, partition);
+				}
+				write(key, writer, record);
+				return;
+			}
+			staged.rows.add(record);
+			if (staged.rows.size() < STAGE_LIMIT) {
+				return;
+			}
+			// the object holds only committed rows, the transaction continues in a
+			// new one
+			_stagedMap.remove(key);
+			if (writer != null) {
+				_writerMap.remove(key);
+				submit(writer);
+			}
+			writer = newWriter(key, table, partition);
+			for (GenericRecord row : staged.rows) {
+				write(key, writer, row);
+			}
+		}
+		// closing writers keep their row group in memory, do not queue too many
+		awaitPending(_maxPending);
+	}
+
+	private ParquetObjectWriter newWriter(String key, String table, String partition) throws Exception {
+		ParquetObjectWriter writer = _factory.newWriter(table, partition);
+		_writerMap.put(key, writer);
+		return writer;
+	}
+
+	/**
+	 * Write a row to an object that holds only rows of the transaction.
+	 */
+	private void write(String key, ParquetObjectWriter writer, GenericRecord record) throws Exception {
+		try {
+			writer.write(record);
+		} catch (Exception e) {
+			// the writer is broken, the next row starts a new object
+			_writerMap.remove(key);
+			discard(writer, e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Upload the objects with only committed rows that reached the maximum
+	 * latency, called by the flusher thread.
+	 */
+	public synchronized void rollAged() {
+		if (_maxLatency == 0) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		Iterator<ParquetObjectWriter> iterator = _writerMap.values().iterator();
+		while (iterator.hasNext()) {
+			ParquetObjectWriter writer = iterator.next();
+			if (writer.getCommittedRowCount() > 0 && writer.getCommittedRowCount() == writer.getRowCount()
+					&& now - writer.getCreationTime() >= _maxLatency) {
+				iterator.remove();
+				submit(writer);
+			}
+		}
+	}
+
+	/**
+	 * Upload all open objects, only call when no transaction is open.
+	 */
+	public synchronized void rollAll() {
+		for (ParquetObjectWriter writer : _writerMap.values()) {
+			submit(writer);
+		}
+		_writerMap.clear();
+	}
+
+	/**
+	 * Upload the kept local files of the failed uploads again.
+	 */
+	public synchronized void retryFailed() {
+		for (ParquetObjectWriter writer : _failed) {
+			submit(writer);
+		}
+		_failed.clear();
+	}
+
+	/**
+	 * Retry the failed uploads and wait for the pending ones. Call before the
+	 * transaction is committed, nothing of it is uploaded if this fails.
+	 */
+	public void prepareCommit() throws Exception {
+		retryFailed();
+		awaitPending(0);
+	}
+
+	/**
+	 * Commit the transaction. Without maximum latency all objects are uploaded
+	 * and awaited. With maximum latency the staged rows are written and all rows
+	 * are marked committed, the full and aged objects are uploaded in the
+	 * background.
+	 */
+	public void commit() throws Exception {
+		if (_maxLatency == 0) {
+			rollAll();
+			awaitPending(0);
+			return;
+		}
+		Exception error = null;
+		synchronized (this) {
+			for (Entry<String, Staged> entry : _stagedMap.entrySet()) {
+				String key = entry.getKey();
+				Staged staged = entry.getValue();
+				try {
+					ParquetObjectWriter writer = _writerMap.get(key);
+					if (writer == null) {
+						// rolled by the flusher since the rows were staged
+						writer = newWriter(key, staged.table, staged.partition);
+					}
+					for (GenericRecord row : staged.rows) {
+						writer.write(row);
+					}
+				} catch (Exception e) {
+					ParquetObjectWriter writer = _writerMap.remove(key);
+					Exception lost = writer != null ? discard(writer, e) : null;
+					if (error == null) {
+						error = lost != null ? lost : e;
+					}
+				}
+			}
+			_stagedMap.clear();
+			if (error != null) {
+				// the transaction is delivered again
+				abort();
+				throw error;
+			}
+			long now = System.currentTimeMillis();
+			Iterator<ParquetObjectWriter> iterator = _writerMap.values().iterator();
+			while (iterator.hasNext()) {
+				ParquetObjectWriter writer = iterator.next();
+				writer.markCommitted();
+				if (writer.getRowCount() >= _maxRows || writer.getDataSize() >= _maxBytes
+						|| now - writer.getCreationTime() >= _maxLatency) {
+					iterator.remove();
+					submit(writer);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Roll back the transaction: drop the staged rows and the objects that hold
+	 * only rows of the transaction.
+	 */
+	public synchronized void abort() {
+		_stagedMap.clear();
+		Iterator<ParquetObjectWriter> iterator = _writerMap.values().iterator();
+		while (iterator.hasNext()) {
+			ParquetObjectWriter writer = iterator.next();
+			if (writer.getCommittedRowCount() == 0) {
+				iterator.remove();
+				discard(writer, null);
+			}
+		}
+	}
+
+	/**
+	 * @return number of rows of committed transactions that could not be
+	 *         uploaded
+	 */
+	public long getLostRows() {
+		return _lostRows;
+	}
+
+	/**
+	 * @return the local files of the failed uploads, they are kept until they
+	 *         are uploaded
+	 */
+	public synchronized ArrayList<String> getFailedFiles() {
+		ArrayList<String> files = new ArrayList<>();
+		for (ParquetObjectWriter writer : _failed) {
+			files.add(writer.getFile().toString());
+		}
+		return files;
+	}
+
+	private void submit(ParquetObjectWriter writer) {
+		_pending.add(new Upload(writer, _executor.submit(() -> {
+			_uploader.closeAndUpload(writer);
+			return null;
+		})));
+	}
+
+	/**
+	 * Wait for pending uploads until at most <code>limit</code> are left. All of
+	 * them are awaited even if one fails, the first failure is thrown afterwards.
+	 * The method also fails while local files wait for their upload.
+	 *
+	 * @param limit number of pending uploads that may remain
+	 */
+	public void awaitPending(int limit) throws Exception {
+		Exception error = null;
+		while (true) {
+			Upload upload;
+			synchronized (this) {
+				if (_pending.size() <= limit) {
+					break;
+				}
+				upload = _pending.poll();
+			}
+			try {
+				upload.future.get();
+			} catch (ExecutionException e) {
+				Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+				Exception lost = failed(upload.writer, cause);
+				if (error == null) {
+					error = lost != null ? lost : cause;
+				}
+			}
+		}
+		synchronized (this) {
+			if (error == null && !_failed.isEmpty()) {
+				error = new Exception("Upload of " + getFailedFiles() + " failed, retried on the next commit.");
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	/**
+	 * Keep the complete local file of a failed upload with committed rows for a
+	 * retry, otherwise discard the writer.
+	 *
+	 * @return the failure if committed rows were lost
+	 */
+	private synchronized Exception failed(ParquetObjectWriter writer, Exception error) {
+		if (writer.getCommittedRowCount() > 0 && writer.isClosed() && writer.getFile() != null
+				&& Files.exists(writer.getFile())) {
+			_failed.add(writer);
+			return null;
+		}
+		return discard(writer, error);
+	}
+
+	/**
+	 * Abort the writer and delete its local file. If it held rows of committed
+	 * transactions they are counted as lost.
+	 *
+	 * @return the failure if committed rows were lost
+	 */
+	private synchronized Exception discard(ParquetObjectWriter writer, Exception error) {
+		writer.abort();
+		if (writer.getCommittedRowCount() == 0) {
+			return null;
+		}
+		_lostRows += writer.getCommittedRowCount();
+		return new Exception(writer.getCommittedRowCount() + " rows of committed transactions for "
+				+ writer.getObjectKey() + " were lost: " + error.getMessage(), error);
+	}
+
+	/**
+	 * Rows of the transaction for an object that holds committed rows.
+	 */
+	private static class Staged {
+		private final String table;
+		private final String partition;
+		private final ArrayList<GenericRecord> rows = new ArrayList<>();
+
+		private Staged(String table, String partition) {
+			this.table = table;
+			this.partition = partition;
+		}
+	}
+
+	/**
+	 * A submitted upload.
+	 */
+	private static class Upload {
+		private final ParquetObjectWriter writer;
+		private final Future<?> future;
+
+		private Upload(ParquetObjectWriter writer, Future<?> future) {
+			this.writer = writer;
+			this.future = future;
+		}
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.avro.AvroParquetWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.OutputFile;
+
+/**
+ * A Parquet object that is being written: the local file, the S3 object key it
+ * is uploaded to and the number of rows written so far. Without local file the
+ * object is written directly to S3 by an {@link S3OutputFile}.
+ * <p>
+ * Every column chunk carries min/max statistics and every column a column
+ * index with the min/max values of its pages, so that readers can skip row
+ * groups and pages. Selected columns get bloom filters in addition. The memory used is
+ * bounded by the row group size, not by the number of rows.
+ */
+public class ParquetObjectWriter implements Closeable {
+
+	private final OutputFile _outputFile;
+	private final Path _file;
+	private final String _objectKey;
+	private final Schema _schema;
+	private final ParquetWriter<GenericRecord> _writer;
+	private long _rowCount = 0;
+	private long _committedRowCount = 0;
+	private boolean _closed = false;
+	private final long _creationTime = System.currentTimeMillis();
+
+	/**
+	 * @param file         the local file
+	 * @param objectKey    the S3 object key
+	 * @param schema       the Avro schema of the rows
+	 * @param rowGroupSize the Parquet row group size in bytes
+	 */
+	public ParquetObjectWriter(Path file, String objectKey, Schema schema, int rowGroupSize) throws IOException {
+		this(TargetAdapterOutputFile.nioPathToOutputFile(file, 0, false), file, objectKey, schema, rowGroupSize);
+	}
+
+	/**
+	 * @param outputFile   where the Parquet data is written to
+	 * @param file         the local file or null if there is none
+	 * @param objectKey    the S3 object key
+	 * @param schema       the Avro schema of the rows
+	 * @param rowGroupSize the Parquet row group size in bytes
+	 */
+	public ParquetObjectWriter(OutputFile outputFile, Path file, String objectKey, Schema schema, int rowGroupSize)
+			throws IOException {
+		this(outputFile, file, objectKey, schema, rowGroupSize, Collections.emptyList());
+	}
+
+	/**
+	 * @param outputFile         where the Parquet data is written to
+	 * @param file               the local file or null if there is none
+	 * @param objectKey          the S3 object key
+	 * @param schema             the Avro schema of the rows
+	 * @param rowGroupSize       the Parquet row group size in bytes
+	 * @param bloomFilterColumns the column paths with bloom filters, nested
+	 *                           columns separated by dots
+	 */
+	public ParquetObjectWriter(OutputFile outputFile, Path file, String objectKey, Schema schema, int rowGroupSize,
+			Collection<String> bloomFilterColumns) throws IOException {
+		_outputFile = outputFile;
+		_file = file;
+		_objectKey = objectKey;
+		_schema = schema;
+		AvroParquetWriter.Builder<GenericRecord> builder = AvroParquetWriter.<GenericRecord>builder(outputFile)
+				.withSchema(schema).withConf(new Configuration()).withCompressionCodec(CompressionCodecName.SNAPPY)
+				.withRowGroupSize(rowGroupSize);
+		for (String column : bloomFilterColumns) {
+			builder.withBloomFilterEnabled(column, true);
+		}
+		_writer = builder.build();
+	}
+
+	/**
+	 * @param record the row to write
+	 */
+	public void write(GenericRecord record) throws IOException {
+		_writer.write(record);
+		_rowCount++;
+	}
+
+	/**
+	 * @return number of rows written
+	 */
+	public long getRowCount() {
+		return _rowCount;
+	}
+
+	/**
+	 * The rows written so far belong to committed transactions.
+	 */
+	public void markCommitted() {
+		_committedRowCount = _rowCount;
+	}
+
+	/**
+	 * @return number of rows of committed transactions
+	 */
+	public long getCommittedRowCount() {
+		return _committedRowCount;
+	}
+
+	/**
+	 * @return bytes written to the file plus the buffered row group
+	 */
+	public long getDataSize() {
+		return _writer.getDataSize();
+	}
+
+	/**
+	 * @return the time the writer was created in milliseconds
+	 */
+	public long getCreationTime() {
+		return _creationTime;
+	}
+
+	public Schema getSchema() {
+		return _schema;
+	}
+
+	/**
+	 * @return the local file, null if the object is written directly to S3
+	 */
+	public Path getFile() {
+		return _file;
+	}
+
+	public String getObjectKey() {
+		return _objectKey;
+	}
+
+	/**
+	 * Write the last row group and the footer, afterwards the file can be
+	 * uploaded. Closing a closed writer does nothing.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!_closed) {
+			_writer.close();
+			_closed = true;
+		}
+	}
+
+	/**
+	 * Drop the object: a direct upload is aborted without completing the object,
+	 * the local file is deleted.
+	 */
+	public void abort() {
+		if (_outputFile instanceof S3OutputFile) {
+			((S3OutputFile) _outputFile).abort();
+		} else {
+			try {
+				close();
+			} catch (IOException e) {
+				// the file is deleted anyway
+			}
+		}
+		try {
+			if (_file != null) {
+				Files.deleteIfExists(_file);
+			}
+		} catch (IOException e) {
+			// an incomplete file is useless
+		}
+	}
+
+	/**
+	 * @return true if the file is complete
+	 */
+	public boolean isClosed() {
+		return _closed;
+	}
+}
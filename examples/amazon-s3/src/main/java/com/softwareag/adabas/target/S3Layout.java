@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+
+import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
+import com.softwareag.adabas.targetadapter.sdk.AdabasObjectData;
+
+/**
+ * Object layout of the Amazon S3 target per Adabas file: the partition columns
+ * and the columns with bloom filters. The layout is read from a properties
+ * file:
+ *
+ * <pre>
+ * EMPL_EMPLOYEES.partition=dbid,fnr,hire_year=HIRE_DATE:yyyy,isn_bucket:16
+ * EMPL_EMPLOYEES.bloomFilter=PERSONNEL_ID,NAME
+ * *.partition=dbid,fnr
+ * </pre>
+ *
+ * The entries with the file name <code>*</code> are the defaults for all
+ * files. Partition columns:
+ * <ul>
+ * <li><code>dbid</code>, <code>fnr</code> - database and file number</li>
+ * <li><code>isn_bucket:N</code> - the bucket of the hashed ISN, 0 to N-1</li>
+ * <li><code>FIELD</code> or <code>FIELD:pattern</code> - the value of the
+ * field, date values are formatted with the {@link SimpleDateFormat} pattern
+ * (default <code>yyyy-MM-dd</code>). The partition column is named
+ * <code>field_part</code>, the field stays a data column and query engines
+ * reject a partition column with the name of a data column. A name of its own
+ * is given with <code>name=FIELD</code> or <code>name=FIELD:pattern</code>.</li>
+ * </ul>
+ * Every row is written to the prefix <code>column=value/...</code> of its
+ * values, escaped like Hive does. The layout of a file is created once and
+ * reused for all rows.
+ */
+public class S3Layout {
+
+	private static final String DEFAULT = "*";
+	private static final String PARTITION = "partition";
+	private static final String BLOOM_FILTER = "bloomFilter";
+	private static final String DBID = "dbid";
+	private static final String FNR = "fnr";
+	private static final String ISN_BUCKET = "isn_bucket";
+	/**
+	 * Suffix of the default name of a field partition column.
+	 */
+	private static final String PART_SUFFIX = "_part";
+	private static final String DEFAULT_DATE_PATTERN = "yyyy-MM-dd";
+	/**
+	 * Partition value of null values, as used by Hive.
+	 */
+	private static final String NULL_VALUE = "__HIVE_DEFAULT_PARTITION__";
+
+	private final Properties _properties;
+	private final HashMap<String, FileLayout> _layoutMap = new HashMap<>();
+
+	/**
+	 * Layout without configuration: no partitions, no bloom filters.
+	 */
+	public S3Layout() {
+		this(new Properties());
+	}
+
+	/**
+	 * @param properties the layout configuration
+	 */
+	public S3Layout(Properties properties) {
+		_properties = properties;
+	}
+
+	/**
+	 * @param fileName the Adabas file name
+	 * @return the layout of the file, it is created on first use
+	 */
+	public synchronized FileLayout getLayout(String fileName) throws Exception {
+		FileLayout layout = _layoutMap.get(fileName);
+		if (layout == null) {
+			layout = createLayout(fileName);
+			_layoutMap.put(fileName, layout);
+		}
+		return layout;
+	}
+
+	private FileLayout createLayout(String fileName) throws Exception {
+		ArrayList<PartitionColumn> columns = new ArrayList<>();
+		String partition = getProperty(fileName, PARTITION);
+		if (partition != null) {
+			for (String column : partition.split(",")) {
+				columns.add(partitionColumn(fileName, column.trim()));
+			}
+		}
+		ArrayList<String> bloomFilterColumns = new ArrayList<>();
+		String bloomFilter = getProperty(fileName, BLOOM_FILTER);
+		if (bloomFilter != null) {
+			for (String column : bloomFilter.split(",")) {
+				bloomFilterColumns.add(column.trim());
+			}
+		}
+		return new FileLayout(columns.toArray(new PartitionColumn[columns.size()]),
+				Collections.unmodifiableList(bloomFilterColumns));
+	}
+
+	private static PartitionColumn partitionColumn(String fileName, String column) throws Exception {
+		int equals = column.indexOf('=');
+		String alias = equals < 0 ? null : column.substring(0, equals).trim();
+		String definition = equals < 0 ? column : column.substring(equals + 1).trim();
+		int colon = definition.indexOf(':');
+		String name = colon < 0 ? definition : definition.substring(0, colon);
+		String argument = colon < 0 ? null : definition.substring(colon + 1);
+		if (alias != null && (DBID.equals(name) || FNR.equals(name) || ISN_BUCKET.equals(name))) {
+			throw new Exception("Partition column " + column + " of " + fileName + " cannot be renamed.");
+		}
+		if (DBID.equals(name)) {
+			return (data, ao) -> DBID + "=" + data.getDatabaseNumber();
+		} else if (FNR.equals(name)) {
+			return (data, ao) -> FNR + "=" + data.getFileNumber();
+		} else if (ISN_BUCKET.equals(name)) {
+			int buckets;
+			try {
+				buckets = Integer.parseInt(argument);
+			} catch (NumberFormatException e) {
+				buckets = 0;
+			}
+			if (buckets <= 0) {
+				throw new Exception("Partition column " + column + " of " + fileName
+						+ " needs the number of buckets greater than 0.");
+			}
+			int n = buckets;
+			return (data, ao) -> {
+				Object isn = ao.evaluateValue("ISN");
+				return ISN_BUCKET + "=" + (isn == null ? NULL_VALUE : isnBucket(fileName, isn, n));
+			};
+		}
+		String partitionName = alias == null ? name.toLowerCase() + PART_SUFFIX : alias;
+		if (!partitionName.matches("[A-Za-z0-9_]+")) {
+			throw new Exception("Partition column " + column + " of " + fileName
+					+ " needs a name of letters, digits and underscores.");
+		}
+		String pattern = argument == null ? DEFAULT_DATE_PATTERN : argument;
+		try {
+			new SimpleDateFormat(pattern);
+		} catch (IllegalArgumentException e) {
+			throw new Exception("Partition column " + column + " of " + fileName + " has an invalid date pattern: "
+					+ e.getLocalizedMessage(), e);
+		}
+		// SimpleDateFormat is not thread-safe, one per thread
+		ThreadLocal<SimpleDateFormat> format = ThreadLocal.withInitial(() -> new SimpleDateFormat(pattern));
+		return (data, ao) -> {
+			Object value = ao.evaluateValue(name);
+			String text = value == null ? NULL_VALUE
+					: escape(value instanceof Date ? format.get().format((Date) value) : value.toString());
+			return partitionName + "=" + text;
+		};
+	}
+
+	/**
+	 * Escape the characters of a partition value that are not safe in object
+	 * keys and partition paths as %XX with upper case hex digits, as Hive and
+	 * Spark do.
+	 */
+	private static String escape(String value) {
+		StringBuilder sb = null;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			boolean safe = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-'
+					|| c == '_' || c == '.';
+			if (safe && sb == null) {
+				continue;
+			}
+			if (sb == null) {
+				sb = new StringBuilder(value.substring(0, i));
+			}
+			if (safe) {
+				sb.append(c);
+			} else {
+				int end = Character.isHighSurrogate(c) && i + 1 < value.length() ? i + 2 : i + 1;
+				for (byte b : value.substring(i, end).getBytes(StandardCharsets.UTF_8)) {
+					sb.append('%').append(Character.toUpperCase(Character.forDigit((b >> 4) & 0xf, 16)))
+							.append(Character.toUpperCase(Character.forDigit(b & 0xf, 16)));
+				}
+				i = end - 1;
+			}
+		}
+		return sb == null ? value : sb.toString();
+	}
+
+	private String getProperty(String fileName, String name) {
+		String value = _properties.getProperty(fileName + "." + name);
+		if (value == null) {
+			value = _properties.getProperty(DEFAULT + "." + name);
+		}
+		return value == null || value.trim().isEmpty() ? null : value.trim();
+	}
+
+	/**
+	 * The ISN is hashed, so that ISNs allocated in steps of N do not all fall into
+	 * the same bucket.
+	 *
+	 * @return the bucket of the ISN, 0 to buckets-1
+	 */
+	static int isnBucket(String fileName, Object isn, int buckets) throws Exception {
+		long value;
+		if (isn instanceof Number) {
+			value = ((Number) isn).longValue();
+		} else {
+			try {
+				value = Long.parseLong(isn.toString().trim());
+			} catch (NumberFormatException e) {
+				throw new Exception("Partition column " + ISN_BUCKET + " of " + fileName + " needs a numeric ISN, got "
+						+ isn.getClass().getSimpleName() + " '" + isn + "'.");
+			}
+		}
+		long hash = value * 0x9E3779B97F4A7C15L;
+		return (int) Math.floorMod(hash ^ (hash >>> 32), (long) buckets);
+	}
+
+	/**
+	 * Creates the <code>column=value</code> path element of a row.
+	 */
+	private interface PartitionColumn {
+		String path(AdabasObjectData data, AdabasObject ao) throws Exception;
+	}
+
+	/**
+	 * Partition columns and bloom filter columns of one Adabas file.
+	 */
+	public static class FileLayout {
+		private final PartitionColumn[] _columns;
+		private final List<String> _bloomFilterColumns;
+
+		private FileLayout(PartitionColumn[] columns, List<String> bloomFilterColumns) {
+			_columns = columns;
+			_bloomFilterColumns = bloomFilterColumns;
+		}
+
+		/**
+		 * @param data the data of the row
+		 * @param ao   the image that contains the partition fields
+		 * @return the partition path of the row, for example
+		 *         <code>dbid=12/fnr=11/</code>, empty without partition columns
+		 */
+		public String getPartition(AdabasObjectData data, AdabasObject ao) throws Exception {
+			if (_columns.length == 0) {
+				return "";
+			}
+			StringBuilder sb = new StringBuilder();
+			for (PartitionColumn column : _columns) {
+				sb.append(column.path(data, ao)).append('/');
+			}
+			return sb.toString();
+		}
+
+		/**
+		 * @return the columns with bloom filters
+		 */
+		public List<String> getBloomFilterColumns() {
+			return _bloomFilterColumns;
+		}
+	}
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+/**
+ * Parquet {@link OutputFile} that writes directly to an S3 object without a
+ * local file. The stream collects the data in part-sized buffers, every full
+ * buffer is uploaded as part of a multipart upload while Parquet continues
+ * writing. At most <code>maxBufferedParts</code> full buffers wait for their
+ * upload, further writes block until a part is uploaded. An object smaller than
+ * one part is sent with a single put on close.
+ * <p>
+ * The object becomes visible when the stream is closed. If writing or uploading
+ * fails, the multipart upload is aborted and the failure is thrown by
+ * <code>write</code> or <code>close</code>. {@link #abort()} drops the object
+ * of a rolled back transaction.
+ */
+public class S3OutputFile implements OutputFile {
+
+	private final S3Client _client;
+	private final ExecutorService _partExecutor;
+	private final String _bucket;
+	private final String _objectKey;
+	private final int _partSize;
+	private final int _maxBufferedParts;
+	private S3PositionOutputStream _stream = null;
+
+	/**
+	 * @param client           the S3 client
+	 * @param partExecutor     the threads uploading the parts
+	 * @param bucket           the bucket
+	 * @param objectKey        the object key
+	 * @param partSize         the part size, at least
+	 *                         {@link S3Uploader#MIN_PART_SIZE}
+	 * @param maxBufferedParts number of full parts that may wait for their upload
+	 */
+	public S3OutputFile(S3Client client, ExecutorService partExecutor, String bucket, String objectKey,
+			long partSize, int maxBufferedParts) {
+		_client = client;
+		_partExecutor = partExecutor;
+		_bucket = bucket;
+		_objectKey = objectKey;
+		_partSize = (int) Math.min(Math.max(partSize, S3Uploader.MIN_PART_SIZE), Integer.MAX_VALUE - 8);
+		_maxBufferedParts = Math.max(1, maxBufferedParts);
+	}
+
+	@Override
+	public PositionOutputStream create(long blockSizeHint) throws IOException {
+		return _stream = new S3PositionOutputStream();
+	}
+
+	@Override
+	public PositionOutputStream createOrOverwrite(long blockSizeHint) throws IOException {
+		return _stream = new S3PositionOutputStream();
+	}
+
+	@Override
+	public boolean supportsBlockSize() {
+		return false;
+	}
+
+	@Override
+	public long defaultBlockSize() {
+		return 0;
+	}
+
+	/**
+	 * Abort the upload of the stream without completing the object. Does nothing
+	 * if the stream is closed.
+	 */
+	public void abort() {
+		if (_stream != null) {
+			_stream.abort();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "s3://" + _bucket + "/" + _objectKey;
+	}
+
+	private class S3PositionOutputStream extends PositionOutputStream {
+		private final Semaphore _bufferedParts = new Semaphore(_maxBufferedParts);
+		/**
+		 * Buffers of uploaded parts, reused for the next parts.
+		 */
+		private final ArrayDeque<byte[]> _freeBuffers = new ArrayDeque<>();
+		private final ArrayList<Future<CompletedPart>> _parts = new ArrayList<>();
+		private byte[] _buffer = new byte[_partSize];
+		private int _count = 0;
+		private long _position = 0;
+		private String _uploadId = null;
+		private boolean _closed = false;
+		/**
+		 * Set when the upload is aborted, part uploads that have not started yet
+		 * are skipped.
+		 */
+		private volatile boolean _aborted = false;
+
+		@Override
+		public long getPos() throws IOException {
+			return _position;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			ensureOpen();
+			if (_count == _buffer.length) {
+				uploadBuffer();
+			}
+			_buffer[_count++] = (byte) b;
+			_position++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			ensureOpen();
+			while (len > 0) {
+				if (_count == _buffer.length) {
+					uploadBuffer();
+				}
+				int n = Math.min(len, _buffer.length - _count);
+				System.arraycopy(b, off, _buffer, _count, n);
+				_count += n;
+				_position += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		private void ensureOpen() throws IOException {
+			if (_closed) {
+				throw new IOException("Stream to " + S3OutputFile.this + " is closed.");
+			}
+		}
+
+		/**
+		 * Upload the full buffer as next part and continue with a free buffer. Blocks
+		 * while the maximum number of parts is waiting for upload.
+		 */
+		private void uploadBuffer() throws IOException {
+			try {
+				if (_uploadId == null) {
+					_uploadId = _client.createMultipartUpload(
+							CreateMultipartUploadRequest.builder().bucket(_bucket).key(_objectKey).build()).uploadId();
+				}
+				_bufferedParts.acquire();
+			} catch (Exception e) {
+				throw failed(e);
+			}
+			String uploadId = _uploadId;
+			byte[] buffer = _buffer;
+			int length = _count;
+			int partNumber = _parts.size() + 1;
+			_parts.add(_partExecutor.submit(() -> {
+				try {
+					if (_aborted) {
+						throw new IOException("Upload to " + S3OutputFile.this + " is aborted.");
+					}
+					String eTag = _client.uploadPart(
+							UploadPartRequest.builder().bucket(_bucket).key(_objectKey).uploadId(uploadId)
+									.partNumber(partNumber).contentLength((long) length).build(),
+							RequestBody.fromByteBuffer(ByteBuffer.wrap(buffer, 0, length))).eTag();
+					return CompletedPart.builder().partNumber(partNumber).eTag(eTag).build();
+				} finally {
+					synchronized (_freeBuffers) {
+						_freeBuffers.add(buffer);
+					}
+					_bufferedParts.release();
+				}
+			}));
+			checkParts();
+			_count = 0;
+			if (!_closed) {
+				synchronized (_freeBuffers) {
+					_buffer = _freeBuffers.isEmpty() ? new byte[_partSize] : _freeBuffers.poll();
+				}
+			}
+		}
+
+		/**
+		 * Fail early if an upload of a previous part failed.
+		 */
+		private void checkParts() throws IOException {
+			for (Future<CompletedPart> part : _parts) {
+				if (part.isDone()) {
+					getPart(part);
+				}
+			}
+		}
+
+		private CompletedPart getPart(Future<CompletedPart> part) throws IOException {
+			try {
+				return part.get();
+			} catch (ExecutionException e) {
+				throw failed(e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw failed(e);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (_closed) {
+				return;
+			}
+			_closed = true;
+			try {
+				if (_uploadId == null) {
+					_client.putObject(PutObjectRequest.builder().bucket(_bucket).key(_objectKey).build(),
+							RequestBody.fromByteBuffer(ByteBuffer.wrap(_buffer, 0, _count)));
+				} else {
+					if (_count > 0) {
+						uploadBuffer();
+					}
+					ArrayList<CompletedPart> completed = new ArrayList<>(_parts.size());
+					for (Future<CompletedPart> part : _parts) {
+						completed.add(getPart(part));
+					}
+					_client.completeMultipartUpload(CompleteMultipartUploadRequest.builder().bucket(_bucket)
+							.key(_objectKey).uploadId(_uploadId)
+							.multipartUpload(CompletedMultipartUpload.builder().parts(completed).build()).build());
+				}
+			} catch (IOException e) {
+				throw e;
+			} catch (Exception e) {
+				throw failed(e);
+			} finally {
+				_buffer = null;
+				_freeBuffers.clear();
+			}
+		}
+
+		private void abort() {
+			if (!_closed) {
+				failed(new IOException("Upload to " + S3OutputFile.this + " is aborted."));
+				_buffer = null;
+				_freeBuffers.clear();
+			}
+		}
+
+		/**
+		 * Abort the multipart upload. Parts that have not started are skipped, the
+		 * running part uploads are awaited, so that no part is uploaded after the
+		 * abort and no buffer is used after it is released.
+		 *
+		 * @param cause the failure
+		 * @return the exception to throw
+		 */
+		private IOException failed(Throwable cause) {
+			IOException exception = cause instanceof IOException ? (IOException) cause
+					: new IOException("Upload to " + S3OutputFile.this + " failed: " + cause.getLocalizedMessage(),
+							cause);
+			_closed = true;
+			if (_uploadId != null) {
+				String uploadId = _uploadId;
+				_uploadId = null;
+				_aborted = true;
+				boolean interrupted = false;
+				for (Future<CompletedPart> part : _parts) {
+					while (true) {
+						try {
+							part.get();
+							break;
+						} catch (InterruptedException e) {
+							// the parts must finish before the upload is aborted
+							interrupted = true;
+						} catch (Exception e) {
+							// already reported by the first failure
+							break;
+						}
+					}
+				}
+				if (interrupted) {
+					Thread.currentThread().interrupt();
+				}
+				try {
+					_client.abortMultipartUpload(AbortMultipartUploadRequest.builder().bucket(_bucket)
+							.key(_objectKey).uploadId(uploadId).build());
+				} catch (Exception e) {
+					exception.addSuppressed(e);
+				}
+			}
+			return exception;
+		}
+	}
+}
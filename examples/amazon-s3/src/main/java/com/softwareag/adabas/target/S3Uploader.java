@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+/**
+ * Uploads local files to S3 without reading them into memory as a whole. Files
+ * smaller than the multipart threshold are sent with a single put that streams
+ * from disk. Larger files are sent as multipart upload, the parts are read with
+ * positional reads from the file and uploaded in parallel. The memory used is
+ * one part per upload thread.
+ * <p>
+ * Failures are thrown to the caller, a failed multipart upload is aborted so
+ * that S3 does not keep its parts.
+ */
+public class S3Uploader {
+
+	/**
+	 * S3 requires at least 5 MB for all parts but the last.
+	 */
+	public static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+	/**
+	 * S3 allows at most 10000 parts per upload.
+	 */
+	private static final int MAX_PARTS = 10000;
+
+	private final S3Client _client;
+	private final ExecutorService _partExecutor;
+	private final long _multipartThreshold;
+	private final long _partSize;
+
+	/**
+	 * @param client             the S3 client
+	 * @param partExecutor       the threads uploading the parts, it must not be the
+	 *                           executor calling {@link #upload}
+	 * @param multipartThreshold files of this size or larger are sent as multipart
+	 *                           upload
+	 * @param partSize           the part size, at least {@link #MIN_PART_SIZE}
+	 */
+	public S3Uploader(S3Client client, ExecutorService partExecutor, long multipartThreshold, long partSize) {
+		_client = client;
+		_partExecutor = partExecutor;
+		_multipartThreshold = Math.max(multipartThreshold, MIN_PART_SIZE);
+		_partSize = Math.max(partSize, MIN_PART_SIZE);
+	}
+
+	/**
+	 * @param bucket    the bucket
+	 * @param objectKey the object key
+	 * @param file      the local file
+	 * @return the ETag of the object
+	 */
+	public String upload(String bucket, String objectKey, Path file) throws Exception {
+		long size = Files.size(file);
+		if (size < _multipartThreshold) {
+			return _client.putObject(PutObjectRequest.builder().bucket(bucket).key(objectKey).build(),
+					RequestBody.fromFile(file)).eTag();
+		}
+		return uploadMultipart(bucket, objectKey, file, size);
+	}
+
+	private String uploadMultipart(String bucket, String objectKey, Path file, long size) throws Exception {
+		// grow the part size for very large files, S3 limits the number of parts
+		long partSize = Math.max(_partSize, (size + MAX_PARTS - 1) / MAX_PARTS);
+		String uploadId = _client
+				.createMultipartUpload(CreateMultipartUploadRequest.builder().bucket(bucket).key(objectKey).build())
+				.uploadId();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ArrayList<Future<CompletedPart>> futures = new ArrayList<>();
+			int partNumber = 1;
+			for (long position = 0; position < size; position += partSize, partNumber++) {
+				int number = partNumber;
+				long start = position;
+				int length = (int) Math.min(partSize, size - position);
+				futures.add(_partExecutor
+						.submit(() -> uploadPart(channel, bucket, objectKey, uploadId, number, start, length)));
+			}
+			ArrayList<CompletedPart> parts = new ArrayList<>(futures.size());
+			Exception error = null;
+			for (Future<CompletedPart> future : futures) {
+				try {
+					parts.add(future.get());
+				} catch (ExecutionException e) {
+					if (error == null) {
+						error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+					}
+				}
+			}
+			if (error != null) {
+				throw error;
+			}
+			return _client.completeMultipartUpload(CompleteMultipartUploadRequest.builder().bucket(bucket)
+					.key(objectKey).uploadId(uploadId)
+					.multipartUpload(CompletedMultipartUpload.builder().parts(parts).build()).build()).eTag();
+		} catch (Exception e) {
+			abort(bucket, objectKey, uploadId, e);
+			throw new Exception("Upload of " + file + " to " + objectKey + " failed: " + e.getLocalizedMessage(), e);
+		}
+	}
+
+	private CompletedPart uploadPart(FileChannel channel, String bucket, String objectKey, String uploadId,
+			int partNumber, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of file at position " + (position + buffer.position()));
+			}
+		}
+		buffer.flip();
+		String eTag = _client.uploadPart(UploadPartRequest.builder().bucket(bucket).key(objectKey).uploadId(uploadId)
+				.partNumber(partNumber).contentLength((long) length).build(), RequestBody.fromByteBuffer(buffer))
+				.eTag();
+		return CompletedPart.builder().partNumber(partNumber).eTag(eTag).build();
+	}
+
+	private void abort(String bucket, String objectKey, String uploadId, Exception cause) {
+		try {
+			_client.abortMultipartUpload(
+					AbortMultipartUploadRequest.builder().bucket(bucket).key(objectKey).uploadId(uploadId).build());
+		} catch (Exception e) {
+			cause.addSuppressed(e);
+		}
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.parquet.io.DelegatingSeekableInputStream;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.SeekableInputStream;
+
+/**
+ * Parquet {@link InputFile} for local files, the counterpart of
+ * {@link TargetAdapterOutputFile}.
+ */
+public class TargetAdapterInputFile {
+
+	public static InputFile nioPathToInputFile(Path file) {
+		assert file != null;
+		return new InputFile() {
+			@Override
+			public long getLength() throws IOException {
+				return Files.size(file);
+			}
+
+			@Override
+			public SeekableInputStream newStream() throws IOException {
+				final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+				return new DelegatingSeekableInputStream(Channels.newInputStream(channel)) {
+					@Override
+					public long getPos() throws IOException {
+						return channel.position();
+					}
+
+					@Override
+					public void seek(long newPos) throws IOException {
+						channel.position(newPos);
+					}
+				};
+			}
+
+			@Override
+			public String toString() {
+				return file.toString();
+			}
+		};
+	}
+}
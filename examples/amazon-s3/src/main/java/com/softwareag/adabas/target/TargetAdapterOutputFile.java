@@ -15,34 +15,58 @@
  */
 package com.softwareag.adabas.target;
 
-import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 
 import static java.nio.file.StandardOpenOption.APPEND;
 import static java.nio.file.StandardOpenOption.CREATE;
 import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
 
 import org.apache.parquet.io.OutputFile;
 import org.apache.parquet.io.PositionOutputStream;
 
+/**
+ * Parquet {@link OutputFile} for local files. The stream collects the data in a
+ * buffer and writes it with a {@link FileChannel}, so large buffers cost one
+ * system call each. The buffer is on the heap: with one open file per table and
+ * partition, direct buffers would hold off-heap memory until the next GC.
+ * <p>
+ * The files are uploaded to S3, the row groups are not padded to HDFS blocks.
+ */
 public class TargetAdapterOutputFile {
 
-	private static final int IO_BUF_SIZE = 16 * 1024;
+	/**
+	 * Limits of the I/O buffer when it is derived from the block size hint.
+	 */
+	public static final int MIN_IO_BUF_SIZE = 64 * 1024;
+	public static final int MAX_IO_BUF_SIZE = 8 * 1024 * 1024;
+	private static final int DEFAULT_IO_BUF_SIZE = 1024 * 1024;
 
 	public static OutputFile nioPathToOutputFile(Path file) {
+		return nioPathToOutputFile(file, 0, false);
+	}
+
+	/**
+	 * @param file      the local file
+	 * @param ioBufSize the I/O buffer size or 0 to derive it from the block size
+	 *                  hint of Parquet, the row group size
+	 * @param force     force the data to the storage device on close
+	 * @return the output file
+	 */
+	public static OutputFile nioPathToOutputFile(Path file, int ioBufSize, boolean force) {
 		assert file != null;
 		return new OutputFile() {
 			@Override
 			public PositionOutputStream create(long blockSizeHint) throws IOException {
-				return makePositionOutputStream(file, IO_BUF_SIZE, false);
+				return makePositionOutputStream(file, bufferSize(ioBufSize, blockSizeHint), false, force);
 			}
 
 			@Override
 			public PositionOutputStream createOrOverwrite(long blockSizeHint) throws IOException {
-				return makePositionOutputStream(file, IO_BUF_SIZE, true);
+				return makePositionOutputStream(file, bufferSize(ioBufSize, blockSizeHint), true, force);
 			}
 
 			@Override
@@ -54,43 +78,99 @@ public class TargetAdapterOutputFile {
 			public long defaultBlockSize() {
 				return 0;
 			}
+
+			@Override
+			public String toString() {
+				return file.toString();
+			}
 		};
 	}
 
-	private static PositionOutputStream makePositionOutputStream(Path file, int ioBufSize, boolean trunc)
-			throws IOException {
-		final OutputStream output = new BufferedOutputStream(
-				Files.newOutputStream(file, CREATE, trunc ? TRUNCATE_EXISTING : APPEND), ioBufSize);
+	private static int bufferSize(int ioBufSize, long blockSizeHint) {
+		if (ioBufSize > 0) {
+			return ioBufSize;
+		}
+		if (blockSizeHint <= 0) {
+			return DEFAULT_IO_BUF_SIZE;
+		}
+		// a fraction of the block, the row group itself is buffered by Parquet
+		return (int) Math.min(MAX_IO_BUF_SIZE, Math.max(MIN_IO_BUF_SIZE, blockSizeHint / 16));
+	}
+
+	private static PositionOutputStream makePositionOutputStream(Path file, int ioBufSize, boolean trunc,
+			boolean force) throws IOException {
+		final FileChannel channel = trunc ? FileChannel.open(file, CREATE, WRITE, TRUNCATE_EXISTING)
+				: FileChannel.open(file, CREATE, WRITE, APPEND);
+		final ByteBuffer buffer = ByteBuffer.allocate(ioBufSize);
 
 		return new PositionOutputStream() {
-			private long position = 0;
+			private long position = channel.size();
+			private boolean closed = false;
 
 			@Override
 			public void write(int b) throws IOException {
-				output.write(b);
+				if (!buffer.hasRemaining()) {
+					drain();
+				}
+				buffer.put((byte) b);
 				position++;
 			}
 
 			@Override
 			public void write(byte[] b) throws IOException {
-				output.write(b);
-				position += b.length;
+				write(b, 0, b.length);
 			}
 
 			@Override
 			public void write(byte[] b, int off, int len) throws IOException {
-				output.write(b, off, len);
 				position += len;
+				if (len >= buffer.capacity()) {
+					// large writes bypass the buffer
+					drain();
+					ByteBuffer wrapped = ByteBuffer.wrap(b, off, len);
+					while (wrapped.hasRemaining()) {
+						channel.write(wrapped);
+					}
+					return;
+				}
+				while (len > 0) {
+					if (!buffer.hasRemaining()) {
+						drain();
+					}
+					int n = Math.min(len, buffer.remaining());
+					buffer.put(b, off, n);
+					off += n;
+					len -= n;
+				}
+			}
+
+			private void drain() throws IOException {
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				buffer.clear();
 			}
 
 			@Override
 			public void flush() throws IOException {
-				output.flush();
+				drain();
 			}
 
 			@Override
 			public void close() throws IOException {
-				output.close();
+				if (closed) {
+					return;
+				}
+				closed = true;
+				try {
+					drain();
+					if (force) {
+						channel.force(true);
+					}
+				} finally {
+					channel.close();
+				}
 			}
 
 			@Override
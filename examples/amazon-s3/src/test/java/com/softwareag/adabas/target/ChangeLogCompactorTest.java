@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2021-2024 Software AG, Darmstadt, Germany and/or Software AG USA
+ * Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates
+ * and/or their licensors.
+ * Use, reproduction, transfer, publication or disclosure is prohibited except
+ * as specifically provided for in your License Agreement with Software AG.
+ *
+ */
+package com.softwareag.adabas.target;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.TreeMap;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.avro.AvroParquetReader;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
+import com.softwareag.adabas.targetadapter.sdk.AdabasObjectData;
+
+public class ChangeLogCompactorTest {
+
+	private static final String TABLE = "EMPL";
+	private static final String IMAGE_SCHEMA = "{\"type\":\"record\",\"name\":\"EMPL\",\"namespace\":\"com.softwareag.adabas\","
+			+ "\"fields\":[{\"name\":\"ISN\",\"type\":\"long\"},{\"name\":\"NAME\",\"type\":\"string\"}]}";
+	private static final int ROW_GROUP_SIZE = 1024 * 1024;
+
+	@Rule
+	public TemporaryFolder _folder = new TemporaryFolder();
+
+	private final ChangeLogMapper _mapper = new ChangeLogMapper(
+			new Schema.Parser().parse(AvroSchemaFactory.createChangeLogSchema(TABLE, IMAGE_SCHEMA)));
+
+	@Test
+	public void mapDelete() throws Exception {
+		GenericRecord row = _mapper.map("Delete", change("7", 1000, null, record(3, "C")));
+		assertEquals("Delete", row.get(ChangeLogMapper.OP).toString());
+		assertEquals("7", row.get(ChangeLogMapper.TRANSACTION_ID));
+		assertEquals(1000L, row.get(ChangeLogMapper.COMMIT_DATE));
+		assertEquals(3L, row.get(ChangeLogMapper.ISN));
+		assertNull(row.get(ChangeLogMapper.AFTER));
+		assertEquals("C", ((GenericRecord) row.get(ChangeLogMapper.BEFORE)).get("NAME"));
+	}
+
+	@Test
+	public void mapWithoutIsn() throws Exception {
+		AdabasObject after = AdabasObject.newObject();
+		after.putValue("NAME", "E");
+		assertNull(_mapper.map("Insert", change("7", 1000, after, null)).get(ChangeLogMapper.ISN));
+	}
+
+	@Test
+	public void roundTrip() throws Exception {
+		AvroRecordMapper imageMapper = new AvroRecordMapper(ChangeLogMapper.getImageSchema(_mapper.getSchema()));
+		Path snapshot = _folder.getRoot().toPath().resolve("empl-p1000-000001.parquet");
+		try (ParquetObjectWriter writer = new ParquetObjectWriter(snapshot, "p1", imageMapper.getSchema(),
+				ROW_GROUP_SIZE)) {
+			writer.write(imageMapper.map(record(1, "A")));
+			writer.write(imageMapper.map(record(2, "B")));
+			writer.write(imageMapper.map(record(3, "C")));
+		}
+		// two partition objects that were open at the same time: the older object
+		// holds the later transactions
+		Path first = _folder.getRoot().toPath().resolve("empl-c2000-000002.parquet");
+		try (ParquetObjectWriter writer = new ParquetObjectWriter(first, "c2", _mapper.getSchema(), ROW_GROUP_SIZE)) {
+			writer.write(_mapper.map("Update", change("12", 3000, record(1, "A2"), record(1, "A1"))));
+			writer.write(_mapper.map("Update", change("10", 4000, record(2, "B10"), record(2, "B9"))));
+			writer.write(_mapper.map("Insert", change("13", 5000, record(4, "D"), null)));
+			writer.write(_mapper.map("Update", change("13", 5000, record(4, "D2"), record(4, "D"))));
+		}
+		Path second = _folder.getRoot().toPath().resolve("empl-c2000-000003.parquet");
+		try (ParquetObjectWriter writer = new ParquetObjectWriter(second, "c3", _mapper.getSchema(),
+				ROW_GROUP_SIZE)) {
+			writer.write(_mapper.map("Update", change("11", 2000, record(1, "A1"), record(1, "A"))));
+			// same commit date, transaction 9 is older than 10
+			writer.write(_mapper.map("Update", change("9", 4000, record(2, "B9"), record(2, "B"))));
+			writer.write(_mapper.map("Delete", change("13", 5000, null, record(3, "C"))));
+			// skipped, not merged as ISN 0
+			AdabasObject withoutIsn = AdabasObject.newObject();
+			withoutIsn.putValue("NAME", "E");
+			writer.write(_mapper.map("Insert", change("13", 5000, withoutIsn, null)));
+		}
+
+		ChangeLogCompactor compactor = new ChangeLogCompactor();
+		compactor.add(second);
+		compactor.add(snapshot);
+		compactor.add(first);
+		Path result = _folder.getRoot().toPath().resolve("snapshot.parquet");
+		assertEquals(3, compactor.write(result, ROW_GROUP_SIZE));
+
+		TreeMap<Long, String> rows = new TreeMap<>();
+		try (ParquetReader<GenericRecord> reader = AvroParquetReader
+				.<GenericRecord>builder(TargetAdapterInputFile.nioPathToInputFile(result))
+				.withConf(new Configuration()).build()) {
+			GenericRecord row;
+			while ((row = reader.read()) != null) {
+				rows.put((Long) row.get(ChangeLogMapper.ISN), row.get("NAME").toString());
+			}
+		}
+		assertEquals("{1=A2, 2=B10, 4=D2}", rows.toString());
+	}
+
+	private static AdabasObjectData change(String transactionId, long commitDate, AdabasObject after,
+			AdabasObject before) {
+		return new AdabasObjectData(transactionId, TABLE, "SUB1", 12, 11, new Date(commitDate), after, before);
+	}
+
+	private static AdabasObject record(long isn, String name) {
+		AdabasObject ao = AdabasObject.newObject();
+		ao.putValue("ISN", isn);
+		ao.putValue("NAME", name);
+		return ao;
+	}
+}
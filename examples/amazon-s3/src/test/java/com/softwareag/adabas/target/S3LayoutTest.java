@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2021-2024 Software AG, Darmstadt, Germany and/or Software AG USA
+ * Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates
+ * and/or their licensors.
+ * Use, reproduction, transfer, publication or disclosure is prohibited except
+ * as specifically provided for in your License Agreement with Software AG.
+ *
+ */
+package com.softwareag.adabas.target;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
+import com.softwareag.adabas.targetadapter.sdk.AdabasObjectData;
+
+public class S3LayoutTest {
+
+	@Test
+	public void isnBucket() throws Exception {
+		int bucket = S3Layout.isnBucket("EMPL", 42L, 16);
+		assertTrue(bucket >= 0 && bucket < 16);
+		assertEquals(bucket, S3Layout.isnBucket("EMPL", 42, 16));
+		assertEquals(bucket, S3Layout.isnBucket("EMPL", "42", 16));
+	}
+
+	@Test
+	public void isnBucketSpreadsSteps() throws Exception {
+		HashSet<Integer> buckets = new HashSet<>();
+		for (long isn = 16; isn <= 16 * 100; isn += 16) {
+			buckets.add(S3Layout.isnBucket("EMPL", isn, 16));
+		}
+		assertTrue(buckets.toString(), buckets.size() > 8);
+	}
+
+	@Test
+	public void isnBucketNotNumeric() {
+		try {
+			S3Layout.isnBucket("EMPL", "A1", 16);
+			fail();
+		} catch (Exception e) {
+			assertEquals("Partition column isn_bucket of EMPL needs a numeric ISN, got String 'A1'.", e.getMessage());
+		}
+	}
+
+	@Test
+	public void fieldPartitionNames() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("EMPL.partition", "dbid,DEPT,hire_year=HIRE_DATE:yyyy");
+		AdabasObject ao = AdabasObject.newObject();
+		ao.putValue("DEPT", "A/b c\u00e4");
+		ao.putValue("HIRE_DATE", new Date(900000000000L));
+		AdabasObjectData data = new AdabasObjectData("1", "EMPL", "SUBS", 12, 11, new Date(0), ao, null);
+
+		assertEquals("dbid=12/dept_part=A%2Fb%20c%C3%A4/hire_year=1998/",
+				new S3Layout(properties).getLayout("EMPL").getPartition(data, ao));
+	}
+
+	@Test
+	public void invalidPartitionName() {
+		Properties properties = new Properties();
+		properties.setProperty("EMPL.partition", "hire-year=HIRE_DATE:yyyy");
+		try {
+			new S3Layout(properties).getLayout("EMPL");
+			fail();
+		} catch (Exception e) {
+			assertEquals("Partition column hire-year=HIRE_DATE:yyyy of EMPL"
+					+ " needs a name of letters, digits and underscores.", e.getMessage());
+		}
+	}
+}
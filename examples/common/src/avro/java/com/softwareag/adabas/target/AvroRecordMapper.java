@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.avro.LogicalType;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+
+import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
+
+/**
+ * Converts {@link AdabasObject}s into {@link GenericRecord}s of the Avro schema
+ * of one Adabas file. The mapper is compiled once per file from the schema:
+ * every field has its record position, a converter for its Avro type and a
+ * default for missing values. Mapping a row is a loop over these arrays.
+ * <p>
+ * Multiple-value fields (arrays) are filled from the value lists of the
+ * {@link AdabasObject}, periodic groups (arrays of records) from its lists of
+ * nested {@link AdabasObject}s, one record per occurrence.
+ * <p>
+ * The mapper is immutable and can be used by several threads.
+ */
+public class AvroRecordMapper {
+
+	private final Schema _schema;
+	private final RecordConverter _converter;
+
+	/**
+	 * @param schema the schema created by {@link AvroSchemaFactory} for the file
+	 */
+	public AvroRecordMapper(Schema schema) {
+		_schema = schema;
+		_converter = new RecordConverter(schema);
+	}
+
+	public Schema getSchema() {
+		return _schema;
+	}
+
+	/**
+	 * @param ao the Adabas data
+	 * @return the record, missing fields are set to default values
+	 */
+	public GenericRecord map(AdabasObject ao) {
+		return _converter.convert(ao);
+	}
+
+	private static ValueConverter converter(Schema schema) {
+		LogicalType logicalType = schema.getLogicalType();
+		if (logicalType instanceof LogicalTypes.Decimal) {
+			int scale = ((LogicalTypes.Decimal) logicalType).getScale();
+			return value -> {
+				BigDecimal decimal = value instanceof BigDecimal ? (BigDecimal) value
+						: new BigDecimal(value.toString());
+				return ByteBuffer.wrap(decimal.setScale(scale, RoundingMode.HALF_UP).unscaledValue().toByteArray());
+			};
+		}
+		switch (schema.getType()) {
+			case RECORD:
+				RecordConverter recordConverter = new RecordConverter(schema);
+				return value -> recordConverter.convert((AdabasObject) value);
+			case ARRAY:
+				return new ArrayConverter(schema);
+			case INT:
+				return value -> value instanceof Integer ? value : ((Number) value).intValue();
+			case LONG:
+				return value -> value instanceof Long ? value : ((Number) value).longValue();
+			case FLOAT:
+				return value -> value instanceof Float ? value : ((Number) value).floatValue();
+			case DOUBLE:
+				return value -> value instanceof Double ? value : ((Number) value).doubleValue();
+			case BYTES:
+				return value -> value instanceof byte[] ? ByteBuffer.wrap((byte[]) value) : value;
+			case STRING:
+				return value -> value instanceof CharSequence ? value : value.toString();
+			default:
+				return value -> value;
+		}
+	}
+
+	private static Object defaultValue(Schema schema) {
+		if (schema.getLogicalType() instanceof LogicalTypes.Decimal) {
+			return ByteBuffer.wrap(new byte[1]);
+		}
+		switch (schema.getType()) {
+			case RECORD:
+				return new RecordConverter(schema).convert(AdabasObject.newObject());
+			case ARRAY:
+				return Collections.emptyList();
+			case INT:
+				return 0;
+			case LONG:
+				return 0L;
+			case FLOAT:
+				return 0.0f;
+			case DOUBLE:
+				return 0.0;
+			case BYTES:
+				return ByteBuffer.allocate(0);
+			default:
+				return "";
+		}
+	}
+
+	/**
+	 * Converts an Adabas value into the representation of its Avro type.
+	 */
+	private interface ValueConverter {
+		Object convert(Object value);
+	}
+
+	/**
+	 * Fills a record from the fields of an {@link AdabasObject}, the whole row or
+	 * one occurrence of a periodic group.
+	 */
+	private static class RecordConverter {
+		private final Schema _schema;
+		private final String[] _names;
+		private final ValueConverter[] _converters;
+		private final Object[] _defaults;
+
+		private RecordConverter(Schema schema) {
+			_schema = schema;
+			List<Schema.Field> fields = schema.getFields();
+			_names = new String[fields.size()];
+			_converters = new ValueConverter[fields.size()];
+			_defaults = new Object[fields.size()];
+			for (Schema.Field field : fields) {
+				_names[field.pos()] = field.name();
+				_converters[field.pos()] = converter(field.schema());
+				_defaults[field.pos()] = defaultValue(field.schema());
+			}
+		}
+
+		private GenericData.Record convert(AdabasObject ao) {
+			GenericData.Record record = new GenericData.Record(_schema);
+			for (int i = 0; i < _names.length; i++) {
+				Object value = ao.evaluateValue(_names[i]);
+				record.put(i, value == null ? _defaults[i] : _converters[i].convert(value));
+			}
+			return record;
+		}
+	}
+
+	/**
+	 * Converts the values of a multiple-value field or the occurrences of a
+	 * periodic group. A single value is converted into an array with one element.
+	 */
+	private static class ArrayConverter implements ValueConverter {
+		private final Schema _schema;
+		private final ValueConverter _elementConverter;
+		private final Object _elementDefault;
+
+		private ArrayConverter(Schema schema) {
+			_schema = schema;
+			_elementConverter = converter(schema.getElementType());
+			_elementDefault = defaultValue(schema.getElementType());
+		}
+
+		@Override
+		public Object convert(Object value) {
+			Collection<?> values = value instanceof Collection ? (Collection<?>) value
+					: Collections.singletonList(value);
+			GenericData.Array<Object> array = new GenericData.Array<>(values.size(), _schema);
+			for (Object element : values) {
+				array.add(element == null ? _elementDefault : _elementConverter.convert(element));
+			}
+			return array;
+		}
+	}
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+
+import com.softwareag.ada.reptor.binmessage.MetadataField;
+import com.softwareag.ada.reptor.util.MetadataHandler;
+import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
+
+/**
+ * Derives Avro schemas for Adabas files from the Target Adapter metadata
+ * ({@link MetadataHandler}) and provides the {@link AvroRecordMapper}s that
+ * convert {@link AdabasObject}s into {@link GenericRecord}s of these schemas.
+ * Schema and mapper are created once per file.
+ * <p>
+ * Field types:
+ * <ul>
+ * <li>INTEGER - <code>int</code>, <code>long</code> for more than 4 bytes</li>
+ * <li>DECIMAL - <code>int</code> up to 9 digits, <code>long</code> up to 18
+ * digits, logical type <code>decimal</code> with more digits or decimal places
+ * (the precision of the field)</li>
+ * <li>FLOAT - <code>float</code>, <code>double</code> for 8 bytes</li>
+ * <li>STRING - <code>string</code>, BINARY - <code>bytes</code></li>
+ * <li>multiple-value fields - array of the field type</li>
+ * <li>periodic groups - array of records named
+ * <code>&lt;file&gt;_&lt;group&gt;</code> with the member fields, multiple-value
+ * fields in the group are arrays in the record</li>
+ * </ul>
+ *
+ * @author Matthias Gerth, Software AG, Darmstadt, Germany
+ *
+ */
+public class AvroSchemaFactory {
+
+	/**
+	 * Provides the metadata of an Adabas file, field name to field.
+	 */
+	public interface MetadataSource {
+		Map<String, MetadataField> getMetadataMap(String table) throws Exception;
+	}
+
+	private final MetadataSource _metadataSource;
+	private HashMap<String, String> _schemaMap = new HashMap<String, String>();
+	private HashMap<String, AvroRecordMapper> _mapperMap = new HashMap<String, AvroRecordMapper>();
+	private HashMap<String, ChangeLogMapper> _changeLogMap = new HashMap<String, ChangeLogMapper>();
+
+	/**
+	 * Schemas from the metadata of the Target Adapter.
+	 */
+	public AvroSchemaFactory() {
+		this(table -> MetadataHandler.getHandler().getMetadataMap(table));
+	}
+
+	/**
+	 * Schemas from other metadata, for example synthetic records of benchmarks
+	 * and load harnesses.
+	 *
+	 * @param metadataSource provides the metadata of the files
+	 */
+	public AvroSchemaFactory(MetadataSource metadataSource) {
+		_metadataSource = metadataSource;
+	}
+
+	/**
+	 * @param table the file name
+	 * @return the Avro schema (JSON) of the file, it is created once per file
+	 */
+	public synchronized String getSchema(String table) throws Exception {
+		if (!_schemaMap.containsKey(table)) {
+			_schemaMap.put(table, createSchema(table, _metadataSource.getMetadataMap(table)));
+		}
+		return _schemaMap.get(table);
+	}
+
+	/**
+	 * @param table the file name
+	 * @return the record mapper of the file with the parsed schema, it is created
+	 *         once per file
+	 */
+	public synchronized AvroRecordMapper getMapper(String table) throws Exception {
+		AvroRecordMapper mapper = _mapperMap.get(table);
+		if (mapper == null) {
+			mapper = new AvroRecordMapper(new Schema.Parser().parse(getSchema(table)));
+			_mapperMap.put(table, mapper);
+		}
+		return mapper;
+	}
+
+	/**
+	 * @param table the file name
+	 * @return the change-log mapper of the file, it is created once per file
+	 */
+	public synchronized ChangeLogMapper getChangeLogMapper(String table) throws Exception {
+		ChangeLogMapper mapper = _changeLogMap.get(table);
+		if (mapper == null) {
+			mapper = new ChangeLogMapper(new Schema.Parser().parse(createChangeLogSchema(table, getSchema(table))));
+			_changeLogMap.put(table, mapper);
+		}
+		return mapper;
+	}
+
+	/**
+	 * Create the schema from the given metadata instead of the metadata of the
+	 * Target Adapter.
+	 *
+	 * @param table    the file name
+	 * @param metadata the metadata of the file, field name to field
+	 * @return the Avro schema (JSON) of the file
+	 */
+	public static String createSchema(String table, Map<String, MetadataField> metadata) {
+		StringBuilder sb = new StringBuilder("{");
+		addPair(sb, "type", "record", false);
+		addPair(sb, "name", table);
+		addPair(sb, "namespace", "com.softwareag.adabas");
+		sb.append(",").append("\"fields\":").append(getFields(table, metadata));
+		sb.append("}");
+		return sb.toString();
+	}
+
+	/**
+	 * Create the mapper from the given metadata instead of the metadata of the
+	 * Target Adapter.
+	 *
+	 * @param table    the file name
+	 * @param metadata the metadata of the file, field name to field
+	 * @return the record mapper of the file
+	 */
+	public static AvroRecordMapper createMapper(String table, Map<String, MetadataField> metadata) {
+		return new AvroRecordMapper(new Schema.Parser().parse(createSchema(table, metadata)));
+	}
+
+	/**
+	 * The schema of the change-log rows of a file: the operation, the
+	 * transaction id, the commit date, the ISN (null if the images have none) and
+	 * the after and before image as records of the file schema.
+	 *
+	 * @param table  the file name
+	 * @param schema the Avro schema (JSON) of the file
+	 * @return the Avro schema (JSON) of the change-log rows
+	 */
+	public static String createChangeLogSchema(String table, String schema) {
+		StringBuilder sb = new StringBuilder("{");
+		addPair(sb, "type", "record", false);
+		addPair(sb, "name", table + "_changelog");
+		addPair(sb, "namespace", "com.softwareag.adabas");
+		sb.append(",\"fields\":[");
+		addField(sb, ChangeLogMapper.OP, quote("string"), false);
+		addField(sb, ChangeLogMapper.TRANSACTION_ID, "[\"null\",\"string\"]");
+		addField(sb, ChangeLogMapper.COMMIT_DATE, "[\"null\",{\"type\":\"long\",\"logicalType\":\"timestamp-millis\"}]");
+		addField(sb, ChangeLogMapper.ISN, "[\"null\",\"long\"]");
+		addField(sb, ChangeLogMapper.AFTER, "[\"null\"," + schema + "]");
+		// the file record is defined by the after image, referenced by name
+		addField(sb, ChangeLogMapper.BEFORE, "[\"null\"," + quote(table) + "]");
+		sb.append("]}");
+		return sb.toString();
+	}
+
+	private static String getFields(String table, Map<String, MetadataField> metadata) {
+		StringBuilder sb = new StringBuilder("[");
+		addField(sb, "ISN", quote("long"), false);
+		// periodic group name to the fields of its record
+		LinkedHashMap<String, StringBuilder> groups = new LinkedHashMap<>();
+		for (MetadataField field : metadata.values()) {
+			String type = getType(field);
+			if (type == null) {
+				continue;
+			}
+			switch (field.getType()) {
+				case BASE:
+					addField(sb, field.getName(), type);
+					break;
+				case MU:
+					addField(sb, field.getName(), array(type));
+					break;
+				case PE:
+				case MUPE:
+					StringBuilder group = groups.get(field.getGroupName());
+					if (group == null) {
+						group = new StringBuilder();
+						groups.put(field.getGroupName(), group);
+					}
+					addField(group, field.getName(), field.getType() == MetadataField.Type.MUPE ? array(type) : type,
+							group.length() > 0);
+					break;
+				default:
+					break;
+			}
+		}
+		for (Entry<String, StringBuilder> group : groups.entrySet()) {
+			StringBuilder record = new StringBuilder("{");
+			addPair(record, "type", "record", false);
+			addPair(record, "name", table + "_" + group.getKey());
+			record.append(",\"fields\":[").append(group.getValue()).append("]}");
+			addField(sb, group.getKey(), array(record.toString()));
+		}
+		sb.append("]");
+		return sb.toString();
+	}
+
+	/**
+	 * @param field the Adabas field
+	 * @return the Avro type (JSON) of a single value of the field or null if the
+	 *         format is not mapped
+	 */
+	private static String getType(MetadataField field) {
+		switch (field.getFormat()) {
+			case STRING:
+				return quote("string");
+			case INTEGER:
+				return quote(field.getLength() > 4 ? "long" : "int");
+			case DECIMAL:
+				// packed: two digits per byte, the last half byte is the sign
+				int digits = field.getLength() > 0 ? 2 * field.getLength() - 1 : 38;
+				int scale = Math.max(0, field.getPrecision());
+				if (scale == 0 && digits <= 9) {
+					return quote("int");
+				} else if (scale == 0 && digits <= 18) {
+					return quote("long");
+				}
+				return "{\"type\":\"bytes\",\"logicalType\":\"decimal\",\"precision\":" + Math.max(digits, scale + 1)
+						+ ",\"scale\":" + scale + "}";
+			case FLOAT:
+				return quote(field.getLength() == 8 ? "double" : "float");
+			case BINARY:
+				return quote("bytes");
+			default:
+				return null;
+		}
+	}
+
+	private static String quote(String type) {
+		return "\"" + type + "\"";
+	}
+
+	private static String array(String items) {
+		return "{\"type\":\"array\",\"items\":" + items + "}";
+	}
+
+	private static void addField(StringBuilder sb, String name, String type) {
+		addField(sb, name, type, true);
+	}
+
+	/**
+	 * @param sb    the fields
+	 * @param name  the field name
+	 * @param type  the Avro type as JSON
+	 * @param comma true to add a comma before the field
+	 */
+	private static void addField(StringBuilder sb, String name, String type, boolean comma) {
+		if (comma) {
+			sb.append(",");
+		}
+		sb.append('{');
+		addPair(sb, "name", name, false);
+		sb.append(",\"type\":").append(type);
+		sb.append('}');
+	}
+
+	private static void addPair(StringBuilder sb, String key, String value) {
+		addPair(sb, key, value, true);
+	}
+
+	private static void addPair(StringBuilder sb, String key, String value, boolean comma) {
+		if (comma) {
+			sb.append(",");
+		}
+		sb.append("\"").append(key).append("\":\"").append(value).append("\"");
+	}
+}
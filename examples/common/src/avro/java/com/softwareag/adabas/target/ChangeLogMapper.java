@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+
+import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
+import com.softwareag.adabas.targetadapter.sdk.AdabasObjectData;
+
+/**
+ * Converts changes (insert, update, delete) into change-log rows of the schema
+ * created by {@link AvroSchemaFactory#createChangeLogSchema}. The images are
+ * converted by an {@link AvroRecordMapper} of the file record.
+ * <p>
+ * The mapper is immutable and can be used by several threads.
+ */
+public class ChangeLogMapper {
+
+	public static final String OP = "op";
+	public static final String TRANSACTION_ID = "transactionId";
+	public static final String COMMIT_DATE = "commitDate";
+	public static final String ISN = "ISN";
+	public static final String AFTER = "after";
+	public static final String BEFORE = "before";
+
+	private final Schema _schema;
+	private final AvroRecordMapper _imageMapper;
+	private final int _opPosition;
+	private final int _transactionIdPosition;
+	private final int _commitDatePosition;
+	private final int _isnPosition;
+	private final int _afterPosition;
+	private final int _beforePosition;
+
+	/**
+	 * @param schema the change-log schema
+	 */
+	public ChangeLogMapper(Schema schema) {
+		_schema = schema;
+		_imageMapper = new AvroRecordMapper(getImageSchema(schema));
+		_opPosition = schema.getField(OP).pos();
+		_transactionIdPosition = schema.getField(TRANSACTION_ID).pos();
+		_commitDatePosition = schema.getField(COMMIT_DATE).pos();
+		_isnPosition = schema.getField(ISN).pos();
+		_afterPosition = schema.getField(AFTER).pos();
+		_beforePosition = schema.getField(BEFORE).pos();
+	}
+
+	/**
+	 * @param schema a change-log schema
+	 * @return the schema of the file record of the images
+	 */
+	public static Schema getImageSchema(Schema schema) {
+		for (Schema type : schema.getField(AFTER).schema().getTypes()) {
+			if (type.getType() == Schema.Type.RECORD) {
+				return type;
+			}
+		}
+		throw new IllegalArgumentException("No image record in " + schema.getFullName());
+	}
+
+	/**
+	 * @param schema a schema of a Parquet file
+	 * @return true if it is a change-log schema
+	 */
+	public static boolean isChangeLog(Schema schema) {
+		return schema.getField(OP) != null && schema.getField(AFTER) != null;
+	}
+
+	public Schema getSchema() {
+		return _schema;
+	}
+
+	/**
+	 * @param operation the operation: Insert, Update or Delete
+	 * @param data      the change, the Adabas object is the after image
+	 * @return the change-log row
+	 */
+	public GenericRecord map(String operation, AdabasObjectData data) {
+		GenericData.Record record = new GenericData.Record(_schema);
+		AdabasObject after = data.getAdabasObject();
+		AdabasObject before = data.getBeforeObject();
+		Object isn = after == null ? null : after.evaluateValue(ISN);
+		if (isn == null && before != null) {
+			isn = before.evaluateValue(ISN);
+		}
+		record.put(_opPosition, operation);
+		record.put(_transactionIdPosition, data.getTransactionId());
+		record.put(_commitDatePosition, data.getCommitDate() == null ? null : data.getCommitDate().getTime());
+		// no ISN 0 for a missing ISN, the change would be merged with other records
+		record.put(_isnPosition, isn == null ? null : ((Number) isn).longValue());
+		record.put(_afterPosition, after == null ? null : _imageMapper.map(after));
+		record.put(_beforePosition, before == null ? null : _imageMapper.map(before));
+		return record;
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
+
+/**
+ * Difference between the before and the after image of an update. The delta
+ * contains the ISN and the key fields and the fields whose value changed:
+ * <ul>
+ * <li>a changed value or multiple-value field is contained with its new
+ * value</li>
+ * <li>a removed value is contained as null</li>
+ * <li>a periodic group is a list with one entry per occurrence: the changed
+ * fields of the occurrence, an empty object if it is unchanged, the complete
+ * occurrence if it is new and null if it was removed</li>
+ * </ul>
+ * Numbers are compared by value, 1.0 and 1.00 are equal.
+ */
+public final class AdabasObjectDiff {
+
+	private static final String ISN = "ISN";
+	private static final Object UNCHANGED = new Object();
+
+	private AdabasObjectDiff() {
+	}
+
+	/**
+	 * @param before    the before image
+	 * @param after     the after image
+	 * @param keyFields fields that are always contained, in addition to the ISN
+	 * @return the delta, a new object
+	 */
+	public static AdabasObject diff(AdabasObject before, AdabasObject after, Collection<String> keyFields) {
+		AdabasObject delta = AdabasObject.newObject();
+		HashSet<String> keys = new HashSet<>();
+		putKey(delta, keys, ISN, before, after);
+		if (keyFields != null) {
+			for (String key : keyFields) {
+				putKey(delta, keys, key, before, after);
+			}
+		}
+		diffFields(before, after, delta, keys);
+		return delta;
+	}
+
+	private static void putKey(AdabasObject delta, Set<String> keys, String key, AdabasObject before,
+			AdabasObject after) {
+		if (keys.add(key)) {
+			Object value = after.evaluateValue(key);
+			if (value == null) {
+				value = before.evaluateValue(key);
+			}
+			if (value != null) {
+				delta.putValue(key, value);
+			}
+		}
+	}
+
+	private static void diffFields(AdabasObject before, AdabasObject after, AdabasObject delta, Set<String> skip) {
+		for (String key : after.getKeyList()) {
+			if (skip.contains(key)) {
+				continue;
+			}
+			Object difference = diffValue(before.evaluateValue(key), after.evaluateValue(key));
+			if (difference != UNCHANGED) {
+				delta.putValue(key, difference);
+			}
+		}
+		Set<String> afterKeys = after.getKeys();
+		for (String key : before.getKeyList()) {
+			if (!skip.contains(key) && !afterKeys.contains(key) && before.evaluateValue(key) != null) {
+				delta.putValue(key, null);
+			}
+		}
+	}
+
+	private static Object diffValue(Object before, Object after) {
+		if (valueEquals(before, after)) {
+			return UNCHANGED;
+		}
+		if (before instanceof AdabasObject && after instanceof AdabasObject) {
+			AdabasObject delta = AdabasObject.newObject();
+			diffFields((AdabasObject) before, (AdabasObject) after, delta, new HashSet<>());
+			return delta;
+		}
+		if (isPeriodicGroup(before) && isPeriodicGroup(after)) {
+			List<?> beforeList = (List<?>) before;
+			List<?> afterList = (List<?>) after;
+			int size = Math.max(beforeList.size(), afterList.size());
+			ArrayList<Object> delta = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) {
+				if (i >= afterList.size()) {
+					delta.add(null);
+				} else if (i >= beforeList.size()) {
+					delta.add(afterList.get(i));
+				} else {
+					Object occurrence = diffValue(beforeList.get(i), afterList.get(i));
+					delta.add(occurrence == UNCHANGED ? AdabasObject.newObject() : occurrence);
+				}
+			}
+			return delta;
+		}
+		// values and multiple-value fields are replaced as a whole
+		return after;
+	}
+
+	private static boolean isPeriodicGroup(Object value) {
+		if (!(value instanceof List<?>) || ((List<?>) value).isEmpty()) {
+			return false;
+		}
+		for (Object occurrence : (List<?>) value) {
+			if (!(occurrence instanceof AdabasObject)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean valueEquals(Object before, Object after) {
+		if (before == after) {
+			return true;
+		}
+		if (before == null || after == null) {
+			return false;
+		}
+		if (before instanceof BigDecimal && after instanceof BigDecimal) {
+			return ((BigDecimal) before).compareTo((BigDecimal) after) == 0;
+		}
+		if (before instanceof byte[] && after instanceof byte[]) {
+			return Arrays.equals((byte[]) before, (byte[]) after);
+		}
+		if (before instanceof List<?> && after instanceof List<?>) {
+			List<?> beforeList = (List<?>) before;
+			List<?> afterList = (List<?>) after;
+			if (beforeList.size() != afterList.size()) {
+				return false;
+			}
+			for (int i = 0; i < beforeList.size(); i++) {
+				if (!valueEquals(beforeList.get(i), afterList.get(i))) {
+					return false;
+				}
+			}
+			return true;
+		}
+		if (before instanceof AdabasObject && after instanceof AdabasObject) {
+			AdabasObject beforeObject = (AdabasObject) before;
+			AdabasObject afterObject = (AdabasObject) after;
+			if (!beforeObject.getKeys().equals(afterObject.getKeys())) {
+				return false;
+			}
+			for (String key : afterObject.getKeys()) {
+				if (!valueEquals(beforeObject.evaluateValue(key), afterObject.evaluateValue(key))) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return before.equals(after);
+	}
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.softwareag.adabas.targetadapter.sdk.AbstractTarget;
+import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
+import com.softwareag.adabas.targetadapter.sdk.AdabasObjectData;
+
+/**
+ * Base class of User Targets that transform the Adabas data on worker threads.
+ * Every operation is split into {@link #transform(String, AdabasObjectData)},
+ * the expensive part like serialization, and
+ * {@link #emit(String, AdabasObjectData, Object)}, which hands the result to
+ * the sink.
+ * <p>
+ * The transformations run on lanes, single-threaded executors chosen by
+ * database number, file number and ISN, so the operations on one record are
+ * transformed in order. The results are emitted on the thread of the Target
+ * Adapter in the order of the operations, the sink does not need to be
+ * thread-safe. Commit is a barrier: it emits all outstanding results of the
+ * transaction before {@link #commitTransaction(String)} is called.
+ * <p>
+ * With 0 dispatch threads (default) everything runs on the thread of the
+ * Target Adapter as before.
+ * <p>
+ * With coalescing, switched on by the subclass, the inserts, updates and
+ * deletes of a transaction are kept until commit and only their net effect per
+ * record is dispatched, see {@link TransactionCoalescer}.
+ * <p>
+ * Measured by an {@link InstrumentedTarget}, the time of the transformations
+ * per operation and the number of outstanding transformations are recorded.
+ * <p>
+ * {@link #abort()} drops the outstanding operations of a failed transaction
+ * and lets the subclass discard what it keeps until commit, see
+ * {@link #discardTransaction()}.
+ *
+ * @param <T> the result of a transformation
+ */
+public abstract class ParallelDispatchTarget<T> extends AbstractTarget implements Instrumentable, Abortable {
+
+	protected static final String DISPATCH_THREADS = "dispatchThreads";
+	protected static final String DISPATCH_QUEUE_SIZE = "dispatchQueueSize";
+	protected static final String COALESCE = "coalesce";
+
+	private static final int DEFAULT_DISPATCH_QUEUE_SIZE = 10000;
+
+	private ExecutorService[] _lanes = null;
+	/**
+	 * Transformations in the order of the operations, the oldest is emitted first.
+	 */
+	private final ArrayDeque<Dispatched<T>> _pending = new ArrayDeque<>();
+	private int _maxPending = DEFAULT_DISPATCH_QUEUE_SIZE;
+	/**
+	 * Size of {@link #_pending} for the metrics, read by other threads.
+	 */
+	private volatile int _pendingCount = 0;
+	/**
+	 * Time of the transformations per operation, null without metrics.
+	 */
+	private HashMap<String, LatencyHistogram> _transformLatency = null;
+	/**
+	 * Operations of the transaction not dispatched yet, null without coalescing.
+	 */
+	private TransactionCoalescer _coalescer = null;
+	/**
+	 * Operations folded away by the coalescing, null without metrics.
+	 */
+	private LongAdder _coalesced = null;
+
+	/**
+	 * Transform the Adabas data, runs on a worker thread. Implementations must be
+	 * thread-safe.
+	 *
+	 * @param operation Create, Populate, Insert, Update or Delete
+	 * @param data      the Adabas data
+	 * @return the result handed to {@link #emit(String, AdabasObjectData, Object)}
+	 */
+	protected abstract T transform(String operation, AdabasObjectData data) throws Exception;
+
+	/**
+	 * Hand the result to the sink, runs on the thread of the Target Adapter in the
+	 * order of the operations.
+	 *
+	 * @param operation Create, Populate, Insert, Update or Delete
+	 * @param data      the Adabas data
+	 * @param result    the result of the transformation
+	 */
+	protected abstract void emit(String operation, AdabasObjectData data, T result) throws Exception;
+
+	/**
+	 * Commit the transaction, all its results are emitted.
+	 *
+	 * @param transactionId the transaction id
+	 * @return true if the transaction is committed
+	 */
+	protected abstract boolean commitTransaction(String transactionId) throws Exception;
+
+	/**
+	 * Discard the results of the current transaction that the subclass keeps
+	 * until commit, called by {@link #abort()}. By default there are none.
+	 */
+	protected void discardTransaction() throws Exception {
+	}
+
+	/**
+	 * Read the dispatch parameters, to be called from setParameter.
+	 *
+	 * @param parameter the parameters of the User Target
+	 */
+	protected void setDispatchParameter(HashMap<String, String> parameter) throws Exception {
+		int threads = 0;
+		if (parameter.containsKey(DISPATCH_THREADS) && !parameter.get(DISPATCH_THREADS).isEmpty()) {
+			threads = Integer.parseInt(parameter.get(DISPATCH_THREADS));
+			if (threads < 0) {
+				throw new Exception("Dispatch threads must not be negative.");
+			}
+		}
+		if (parameter.containsKey(DISPATCH_QUEUE_SIZE) && !parameter.get(DISPATCH_QUEUE_SIZE).isEmpty()) {
+			_maxPending = Integer.parseInt(parameter.get(DISPATCH_QUEUE_SIZE));
+			if (_maxPending <= 0) {
+				throw new Exception("Dispatch queue size must be greater than 0.");
+			}
+		}
+		if (threads > 0) {
+			_lanes = new ExecutorService[threads];
+			for (int i = 0; i < threads; i++) {
+				String name = getClass().getSimpleName() + "-dispatch-" + (i + 1);
+				_lanes[i] = Executors.newSingleThreadExecutor(r -> {
+					Thread thread = new Thread(r, name);
+					thread.setDaemon(true);
+					return thread;
+				});
+			}
+		}
+	}
+
+	/**
+	 * Keep the inserts, updates and deletes of a transaction until commit and
+	 * dispatch only their net effect per record, to be called from setParameter.
+	 *
+	 * @param coalescing true to coalesce the operations
+	 */
+	protected void setCoalescing(boolean coalescing) {
+		_coalescer = coalescing ? new TransactionCoalescer() : null;
+	}
+
+	/**
+	 * @param metadata the metadata of the User Target
+	 * @return the metadata with the dispatch parameters appended
+	 */
+	protected static Object[][] withDispatchMetadata(Object[][] metadata) {
+		Object[][] result = Arrays.copyOf(metadata, metadata.length + 2);
+		result[metadata.length] = new Object[] { DISPATCH_THREADS, "Dispatch Threads", ParameterType.Integer };
+		result[metadata.length + 1] = new Object[] { DISPATCH_QUEUE_SIZE, "Dispatch Queue Size",
+				ParameterType.Integer };
+		return result;
+	}
+
+	@Override
+	public void setMetrics(TargetMetrics metrics) {
+		HashMap<String, LatencyHistogram> transformLatency = new HashMap<>();
+		for (String operation : new String[] { "Create", "Populate", "Insert", "Update", "Delete" }) {
+			transformLatency.put(operation, metrics.histogram("adabas_target_transform_seconds",
+					"Time to transform the Adabas data, for example to serialize it.", "operation", operation));
+		}
+		_transformLatency = transformLatency;
+		metrics.gauge("adabas_target_dispatch_queue", "Transformations not emitted yet.", () -> _pendingCount);
+		if (_coalescer != null) {
+			_coalesced = metrics.counter("adabas_target_coalesced_operations_total",
+					"Operations folded into the net effect of their transaction.");
+		}
+	}
+
+	@Override
+	public void create(AdabasObjectData data) throws Exception {
+		dispatchCoalesced();
+		dispatch("Create", data);
+	}
+
+	@Override
+	public void populate(AdabasObjectData data) throws Exception {
+		dispatchCoalesced();
+		dispatch("Populate", data);
+	}
+
+	@Override
+	public void insert(AdabasObjectData data) throws Exception {
+		coalesceOrDispatch("Insert", data);
+	}
+
+	@Override
+	public void update(AdabasObjectData data) throws Exception {
+		coalesceOrDispatch("Update", data);
+	}
+
+	@Override
+	public void delete(AdabasObjectData data) throws Exception {
+		coalesceOrDispatch("Delete", data);
+	}
+
+	@Override
+	public boolean commit(String transactionId) throws Exception {
+		awaitDispatched();
+		return commitTransaction(transactionId);
+	}
+
+	/**
+	 * Drop the outstanding and coalesced operations of the transaction, then let
+	 * the subclass discard its results.
+	 */
+	@Override
+	public void abort() throws Exception {
+		cancelPending();
+		if (_coalescer != null) {
+			_coalescer.clear();
+		}
+		discardTransaction();
+	}
+
+	@Override
+	public void close() throws Exception {
+		if (_lanes != null) {
+			for (ExecutorService lane : _lanes) {
+				lane.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Emit all outstanding results, for example before a command that has to see
+	 * them.
+	 */
+	protected void awaitDispatched() throws Exception {
+		dispatchCoalesced();
+		while (!_pending.isEmpty()) {
+			emitOldest();
+		}
+	}
+
+	private void coalesceOrDispatch(String operation, AdabasObjectData data) throws Exception {
+		if (_coalescer != null) {
+			_coalescer.add(operation, data);
+		} else {
+			dispatch(operation, data);
+		}
+	}
+
+	/**
+	 * Dispatch the net operations kept by the coalescer.
+	 */
+	private void dispatchCoalesced() throws Exception {
+		if (_coalescer != null && !_coalescer.isEmpty()) {
+			int folded = _coalescer.drain(this::dispatch);
+			if (_coalesced != null) {
+				_coalesced.add(folded);
+			}
+		}
+	}
+
+	private void dispatch(String operation, AdabasObjectData data) throws Exception {
+		if (_lanes == null) {
+			emit(operation, data, measuredTransform(operation, data));
+			return;
+		}
+		Future<T> result = _lanes[lane(data)].submit(() -> measuredTransform(operation, data));
+		_pending.add(new Dispatched<>(operation, data, result));
+		_pendingCount = _pending.size();
+		// emit what is done without waiting, wait only if the queue is full
+		while (!_pending.isEmpty() && (_pending.size() > _maxPending || _pending.peek().result.isDone())) {
+			emitOldest();
+		}
+	}
+
+	private T measuredTransform(String operation, AdabasObjectData data) throws Exception {
+		if (_transformLatency == null) {
+			return transform(operation, data);
+		}
+		long start = System.nanoTime();
+		T result = transform(operation, data);
+		_transformLatency.get(operation).record(System.nanoTime() - start);
+		return result;
+	}
+
+	private void emitOldest() throws Exception {
+		Dispatched<T> oldest = _pending.poll();
+		_pendingCount = _pending.size();
+		try {
+			T result;
+			try {
+				result = oldest.result.get();
+			} catch (ExecutionException e) {
+				throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+			}
+			emit(oldest.operation, oldest.data, result);
+		} catch (Exception e) {
+			// the transaction fails, its remaining operations are dropped
+			cancelPending();
+			throw e;
+		}
+	}
+
+	private void cancelPending() {
+		for (Dispatched<T> dispatched : _pending) {
+			dispatched.result.cancel(false);
+		}
+		_pending.clear();
+		_pendingCount = 0;
+	}
+
+	private int lane(AdabasObjectData data) {
+		AdabasObject ao = data.getAdabasObject() != null ? data.getAdabasObject() : data.getBeforeObject();
+		Object isn = ao == null ? null : ao.evaluateValue("ISN");
+		int hash = 31 * (31 * data.getDatabaseNumber() + data.getFileNumber()) + (isn == null ? 0 : isn.hashCode());
+		return Math.floorMod(hash ^ (hash >>> 16), _lanes.length);
+	}
+
+	/**
+	 * An operation with its pending transformation.
+	 */
+	private static class Dispatched<T> {
+		private final String operation;
+		private final AdabasObjectData data;
+		private final Future<T> result;
+
+		private Dispatched(String operation, AdabasObjectData data, Future<T> result) {
+			this.operation = operation;
+			this.data = data;
+			this.result = result;
+		}
+	}
+}
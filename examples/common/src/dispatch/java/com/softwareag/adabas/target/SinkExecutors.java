@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for the blocking calls of a sink, like uploads. They run either on
+ * a fixed pool of platform threads or, from Java 21 on, on one virtual thread
+ * per task. The number of virtual threads running the task body at the same
+ * time is limited by a semaphore, waiting for it costs no platform thread.
+ * <p>
+ * The virtual threads are created by reflection, so the examples still compile
+ * and run with Java 17.
+ */
+public final class SinkExecutors {
+
+	private SinkExecutors() {
+	}
+
+	/**
+	 * @return true if the Java runtime supports virtual threads
+	 */
+	public static boolean isVirtualThreadsSupported() {
+		try {
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @param name        the prefix of the thread names
+	 * @param concurrency the number of platform threads or the number of tasks
+	 *                    running at the same time on virtual threads
+	 * @param virtual     use virtual threads
+	 * @return the executor
+	 */
+	public static ExecutorService newExecutor(String name, int concurrency, boolean virtual) throws Exception {
+		if (virtual) {
+			return new BoundedExecutor(newVirtualThreadPerTaskExecutor(name), concurrency);
+		}
+		AtomicInteger threadNumber = new AtomicInteger();
+		return Executors.newFixedThreadPool(concurrency, r -> {
+			Thread thread = new Thread(r, name + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Same as
+	 * <code>Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name, 1).factory())</code>.
+	 */
+	private static ExecutorService newVirtualThreadPerTaskExecutor(String name) throws Exception {
+		if (!isVirtualThreadsSupported()) {
+			throw new Exception("Virtual threads require Java 21, running on Java "
+					+ System.getProperty("java.version") + ".");
+		}
+		Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+		Class<?> ofVirtual = Class.forName("java.lang.Thread$Builder$OfVirtual");
+		builder = ofVirtual.getMethod("name", String.class, long.class).invoke(builder, name, 1L);
+		ThreadFactory factory = (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory")
+				.invoke(builder);
+		Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+		return (ExecutorService) newExecutor.invoke(null, factory);
+	}
+
+	/**
+	 * Starts every task at once, the task waits for a permit before it runs. A
+	 * task interrupted while waiting, by {@link #shutdownNow()}, runs anyway with
+	 * the interrupt flag set, so that its future always completes.
+	 */
+	static class BoundedExecutor extends AbstractExecutorService {
+		private final ExecutorService _executor;
+		private final Semaphore _permits;
+
+		BoundedExecutor(ExecutorService executor, int concurrency) {
+			_executor = executor;
+			_permits = new Semaphore(concurrency);
+		}
+
+		@Override
+		public void execute(Runnable command) {
+			_executor.execute(() -> {
+				boolean permit = false;
+				try {
+					_permits.acquire();
+					permit = true;
+				} catch (InterruptedException e) {
+					// the task sees the interrupt and fails or finishes quickly
+					Thread.currentThread().interrupt();
+				}
+				try {
+					command.run();
+				} finally {
+					if (permit) {
+						_permits.release();
+					}
+				}
+			});
+		}
+
+		@Override
+		public void shutdown() {
+			_executor.shutdown();
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			return _executor.shutdownNow();
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return _executor.isShutdown();
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return _executor.isTerminated();
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+			return _executor.awaitTermination(timeout, unit);
+		}
+	}
+}
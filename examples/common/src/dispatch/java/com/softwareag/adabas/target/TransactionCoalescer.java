@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.util.LinkedHashMap;
+import java.util.Objects;
+
+import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
+import com.softwareag.adabas.targetadapter.sdk.AdabasObjectData;
+
+/**
+ * Folds the inserts, updates and deletes of one transaction on the same
+ * record, identified by file name and ISN, into their net effect:
+ * <ul>
+ * <li>insert and updates: an insert with the last after image</li>
+ * <li>updates: an update with the last after image and the first before
+ * image</li>
+ * <li>insert and delete: nothing</li>
+ * <li>updates and delete: a delete with the first before image</li>
+ * <li>delete and insert: an update</li>
+ * </ul>
+ * The net operations are drained in the order the records were first changed.
+ * Operations without ISN are not folded.
+ */
+public class TransactionCoalescer {
+
+	private static final String INSERT = "Insert";
+	private static final String UPDATE = "Update";
+	private static final String DELETE = "Delete";
+
+	/**
+	 * Receives the net operations.
+	 */
+	public interface Sink {
+		void accept(String operation, AdabasObjectData data) throws Exception;
+	}
+
+	private final LinkedHashMap<Object, Changes> _changes = new LinkedHashMap<>();
+	private int _operationCount = 0;
+
+	/**
+	 * @param operation Insert, Update or Delete
+	 * @param data      the Adabas data
+	 */
+	public void add(String operation, AdabasObjectData data) {
+		_operationCount++;
+		AdabasObject ao = data.getAdabasObject() != null ? data.getAdabasObject() : data.getBeforeObject();
+		Object isn = ao == null ? null : ao.evaluateValue("ISN");
+		// an operation without ISN gets a key of its own
+		Object key = isn == null ? new Object() : new Key(data.getFileName(), isn);
+		Changes changes = _changes.get(key);
+		if (changes == null) {
+			_changes.put(key, new Changes(operation, data));
+		} else {
+			changes.lastOperation = operation;
+			changes.last = data;
+			changes.count++;
+		}
+	}
+
+	public boolean isEmpty() {
+		return _operationCount == 0;
+	}
+
+	/**
+	 * @return the number of operations added since the last drain
+	 */
+	public int getOperationCount() {
+		return _operationCount;
+	}
+
+	/**
+	 * Hand the net operations to the sink and clear the coalescer, also if the
+	 * sink fails.
+	 *
+	 * @param sink receives the net operations
+	 * @return the number of operations that were folded away
+	 */
+	public int drain(Sink sink) throws Exception {
+		int dropped = _operationCount;
+		try {
+			for (Changes changes : _changes.values()) {
+				String operation = changes.netOperation();
+				if (operation != null) {
+					sink.accept(operation, changes.netData(operation));
+					dropped--;
+				}
+			}
+			return dropped;
+		} finally {
+			clear();
+		}
+	}
+
+	public void clear() {
+		_changes.clear();
+		_operationCount = 0;
+	}
+
+	/**
+	 * The first and the last operation on one record.
+	 */
+	private static class Changes {
+		private final String firstOperation;
+		private final AdabasObjectData first;
+		private String lastOperation;
+		private AdabasObjectData last;
+		private int count = 1;
+
+		private Changes(String operation, AdabasObjectData data) {
+			firstOperation = operation;
+			first = data;
+			lastOperation = operation;
+			last = data;
+		}
+
+		/**
+		 * @return the net operation, null if the record neither existed before nor
+		 *         exists after the transaction
+		 */
+		private String netOperation() {
+			if (count == 1) {
+				return firstOperation;
+			}
+			boolean existedBefore = !firstOperation.equals(INSERT);
+			boolean existsAfter = !lastOperation.equals(DELETE);
+			if (existedBefore) {
+				return existsAfter ? UPDATE : DELETE;
+			}
+			return existsAfter ? INSERT : null;
+		}
+
+		private AdabasObjectData netData(String operation) {
+			if (count == 1) {
+				return first;
+			}
+			AdabasObject before = operation.equals(INSERT) ? null : first.getBeforeObject();
+			return new AdabasObjectData(last.getTransactionId(), last.getFileName(), last.getSubscription(),
+					last.getDatabaseNumber(), last.getFileNumber(), last.getCommitDate(), last.getAdabasObject(),
+					before);
+		}
+	}
+
+	private static class Key {
+		private final String fileName;
+		private final Object isn;
+
+		private Key(String fileName, Object isn) {
+			this.fileName = fileName;
+			this.isn = isn;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return Objects.equals(fileName, other.fileName) && isn.equals(other.isn);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * Objects.hashCode(fileName) + isn.hashCode();
+		}
+	}
+}
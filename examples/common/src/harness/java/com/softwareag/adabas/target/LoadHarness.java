@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.io.FileInputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Properties;
+
+import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
+import com.softwareag.adabas.targetadapter.sdk.AdabasObjectData;
+import com.softwareag.adabas.targetadapter.sdk.IUserTarget;
+
+/**
+ * Drives a User Target like the Target Adapter: create per file, optionally a
+ * populate, then transactions of inserts, updates and deletes, each ended by a
+ * commit. Reports the operations per second and the commit latencies.
+ *
+ * <pre>
+ * java com.softwareag.adabas.target.LoadHarness &lt;target class&gt; &lt;parameters file&gt; [options]
+ * </pre>
+ *
+ * The parameters file is a properties file with the parameters of the target.
+ * Options:
+ * <ul>
+ * <li>--transactions n - number of transactions (default 1000)</li>
+ * <li>--operations n - operations per transaction (default 10)</li>
+ * <li>--rate n - transactions per second, 0 as fast as possible (default
+ * 0)</li>
+ * <li>--mix i,u,d - percentage of inserts, updates and deletes (default
+ * 50,40,10)</li>
+ * <li>--shape FLAT|WIDE|DEEP - the records (default FLAT)</li>
+ * <li>--files n - number of Adabas files (default 1)</li>
+ * <li>--populate n - rows populated per file in one transaction before the
+ * transactions (default 0)</li>
+ * <li>--seed n - seed of the generated workload (default 1)</li>
+ * <li>--replay file - replay a recorded workload instead</li>
+ * <li>--record file - write the generated workload to a file</li>
+ * </ul>
+ */
+public class LoadHarness {
+
+	private final IUserTarget _target;
+	private final int _rate;
+	private final HashSet<String> _created = new HashSet<>();
+	private long[] _latencies = new long[1024];
+	private int _commits = 0;
+	private int _failedCommits = 0;
+	private long _operations = 0;
+
+	/**
+	 * @param target the User Target, its parameters are set
+	 * @param rate   transactions per second, 0 as fast as possible
+	 */
+	public LoadHarness(IUserTarget target, int rate) {
+		_target = target;
+		_rate = rate;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err.println("Usage: LoadHarness <target class> <parameters file> [--transactions n] "
+					+ "[--operations n] [--rate n] [--mix i,u,d] [--shape FLAT|WIDE|DEEP] [--files n] "
+					+ "[--populate n] [--seed n] [--replay file] [--record file]");
+			System.exit(2);
+		}
+		HashMap<String, String> options = new HashMap<>();
+		for (int i = 2; i < args.length; i += 2) {
+			if (!args[i].startsWith("--") || i + 1 >= args.length) {
+				throw new Exception("Option with value expected: " + args[i]);
+			}
+			options.put(args[i].substring(2), args[i + 1]);
+		}
+		long transactions = Long.parseLong(options.getOrDefault("transactions", "1000"));
+		int operations = Integer.parseInt(options.getOrDefault("operations", "10"));
+		int rate = Integer.parseInt(options.getOrDefault("rate", "0"));
+		int files = Integer.parseInt(options.getOrDefault("files", "1"));
+		long populate = Long.parseLong(options.getOrDefault("populate", "0"));
+		long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+		SyntheticRecords.Shape shape = SyntheticRecords.Shape
+				.valueOf(options.getOrDefault("shape", "FLAT").toUpperCase());
+		String[] mixValues = options.getOrDefault("mix", "50,40,10").split(",");
+		if (mixValues.length != 3) {
+			throw new Exception("Mix of inserts, updates and deletes expected: " + options.get("mix"));
+		}
+		int[] mix = new int[3];
+		for (int i = 0; i < 3; i++) {
+			mix[i] = Integer.parseInt(mixValues[i].trim());
+		}
+
+		Properties properties = new Properties();
+		try (FileInputStream in = new FileInputStream(args[1])) {
+			properties.load(in);
+		}
+		HashMap<String, String> parameter = new HashMap<>();
+		for (Entry<Object, Object> entry : properties.entrySet()) {
+			parameter.put(entry.getKey().toString(), entry.getValue().toString());
+		}
+		IUserTarget target = (IUserTarget) Class.forName(args[0]).getDeclaredConstructor().newInstance();
+		if (target instanceof SyntheticTarget) {
+			((SyntheticTarget) target).setShape(shape);
+		}
+		target.setParameter("LoadHarness", parameter);
+		if (!target.isServiceOkay()) {
+			throw new Exception("Service of " + args[0] + " is not okay.");
+		}
+
+		Workload workload = options.containsKey("replay")
+				? Workload.read(shape, Paths.get(options.get("replay")))
+				: Workload.generate(shape, files, transactions, operations, mix, seed);
+		PrintWriter record = options.containsKey("record")
+				? new PrintWriter(Files.newBufferedWriter(Paths.get(options.get("record")), StandardCharsets.UTF_8))
+				: null;
+		LoadHarness harness = new LoadHarness(target, rate);
+		try {
+			if (populate > 0 && !options.containsKey("replay")) {
+				harness.populate(files, populate, shape);
+			}
+			harness.run(workload, record);
+		} finally {
+			workload.close();
+			if (record != null) {
+				record.close();
+			}
+			target.close();
+		}
+	}
+
+	/**
+	 * Populate the generated files in one transaction each, the commit latency of
+	 * a populate is not part of the statistics. The file is created first, as
+	 * the Target Adapter does.
+	 */
+	public void populate(int files, long rows, SyntheticRecords.Shape shape) throws Exception {
+		for (int file = 1; file <= files; file++) {
+			long start = System.nanoTime();
+			create(new AdabasObjectData("0", Workload.fileName(file), "SUBS", 47, 10 + file, new Date(),
+					AdabasObject.newObject(), null));
+			for (long isn = 1; isn <= rows; isn++) {
+				_target.populate(new AdabasObjectData("0", Workload.fileName(file), "SUBS", 47, 10 + file, new Date(),
+						SyntheticRecords.record(shape, isn), null));
+			}
+			_target.commit("populate-" + file);
+			long nanos = System.nanoTime() - start;
+			System.out.printf("Populated %s: %d rows in %.3f s, %.0f rows/s%n", Workload.fileName(file), rows,
+					nanos / 1e9, rows * 1e9 / nanos);
+		}
+	}
+
+	/**
+	 * Replay the workload and print the statistics.
+	 *
+	 * @param workload the transactions
+	 * @param record   writes the replayed workload or null
+	 */
+	public void run(Workload workload, PrintWriter record) throws Exception {
+		long start = System.nanoTime();
+		List<Workload.Operation> transaction;
+		while ((transaction = workload.nextTransaction()) != null) {
+			if (_rate > 0) {
+				// fixed schedule, a slow commit does not lower the offered rate
+				long due = start + _commits * 1000000000L / _rate;
+				long wait = due - System.nanoTime();
+				if (wait > 0) {
+					Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+				}
+			}
+			String transactionId = null;
+			for (Workload.Operation operation : transaction) {
+				AdabasObjectData data = operation.getData();
+				transactionId = data.getTransactionId();
+				create(new AdabasObjectData(transactionId, data.getFileName(), data.getSubscription(),
+						data.getDatabaseNumber(), data.getFileNumber(), data.getCommitDate(), AdabasObject.newObject(),
+						null));
+				execute(operation);
+				if (record != null) {
+					record.println(operation.toLine());
+				}
+			}
+			long commitStart = System.nanoTime();
+			if (!_target.commit(transactionId == null ? "empty" : transactionId)) {
+				_failedCommits++;
+			}
+			addLatency(System.nanoTime() - commitStart);
+			if (record != null) {
+				record.println(Workload.COMMIT);
+			}
+		}
+		report(System.nanoTime() - start);
+	}
+
+	/**
+	 * Create the file before its first operation. The Target Adapter passes an
+	 * object without fields.
+	 */
+	private void create(AdabasObjectData data) throws Exception {
+		if (_created.add(data.getFileName())) {
+			_target.create(data);
+		}
+	}
+
+	private void execute(Workload.Operation operation) throws Exception {
+		AdabasObjectData data = operation.getData();
+		switch (operation.getOperation()) {
+			case "Insert":
+				_target.insert(data);
+				break;
+			case "Update":
+				_target.update(data);
+				break;
+			case "Delete":
+				_target.delete(data);
+				break;
+			case "Populate":
+				_target.populate(data);
+				break;
+			default:
+				throw new Exception("Unknown operation " + operation.getOperation());
+		}
+		_operations++;
+	}
+
+	private void addLatency(long nanos) {
+		if (_commits == _latencies.length) {
+			_latencies = Arrays.copyOf(_latencies, _latencies.length * 2);
+		}
+		_latencies[_commits++] = nanos;
+	}
+
+	private void report(long nanos) {
+		long[] latencies = Arrays.copyOf(_latencies, _commits);
+		Arrays.sort(latencies);
+		System.out.printf("Operations: %d in %.3f s, %.0f events/s%n", _operations, nanos / 1e9,
+				_operations * 1e9 / nanos);
+		System.out.printf("Commits: %d, %.0f commits/s, %d failed%n", _commits, _commits * 1e9 / nanos,
+				_failedCommits);
+		if (_commits > 0) {
+			System.out.printf("Commit latency (ms): p50 %.3f, p99 %.3f, max %.3f%n", percentile(latencies, 50) / 1e6,
+					percentile(latencies, 99) / 1e6, latencies[latencies.length - 1] / 1e6);
+		}
+	}
+
+	/**
+	 * @return the value at the percentile of the sorted values, nearest rank
+	 */
+	private static long percentile(long[] sorted, int percent) {
+		int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+		return sorted[Math.max(0, rank - 1)];
+	}
+}
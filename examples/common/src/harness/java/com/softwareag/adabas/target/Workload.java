@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
+import com.softwareag.adabas.targetadapter.sdk.AdabasObjectData;
+
+/**
+ * The transactions that the load harness replays, either generated with a
+ * random mix of inserts, updates and deletes or read from a recorded file. A
+ * recorded file has one operation per line and a line <code>Commit</code> at
+ * the end of every transaction:
+ *
+ * <pre>
+ * Insert EMPL_EMPLOYEES 47 11 1001
+ * Update EMPL_EMPLOYEES 47 11 17
+ * Commit
+ * </pre>
+ *
+ * The records themselves are synthetic ({@link SyntheticRecords}), the ISN
+ * selects their values.
+ */
+public abstract class Workload implements AutoCloseable {
+
+	public static final String COMMIT = "Commit";
+
+	protected final SyntheticRecords.Shape _shape;
+	private long _transactionNumber = 0;
+
+	protected Workload(SyntheticRecords.Shape shape) {
+		_shape = shape;
+	}
+
+	/**
+	 * @return the operations of the next transaction or null at the end
+	 */
+	public abstract List<Operation> nextTransaction() throws IOException;
+
+	@Override
+	public void close() throws IOException {
+	}
+
+	/**
+	 * @return the transaction id of the next transaction
+	 */
+	protected String nextTransactionId() {
+		return Long.toString(++_transactionNumber);
+	}
+
+	/**
+	 * Create the data of an operation: inserts and populates carry the record,
+	 * updates the changed record and the before image, deletes the ISN and the
+	 * before image.
+	 */
+	protected AdabasObjectData createData(String transactionId, String operation, String fileName, int dbid, int fnr,
+			long isn) {
+		AdabasObject after = SyntheticRecords.record(_shape, isn);
+		AdabasObject before = null;
+		if (operation.equals("Update")) {
+			before = SyntheticRecords.record(_shape, isn);
+			after.putValue("CITY", "Updated" + transactionId);
+		} else if (operation.equals("Delete")) {
+			before = after;
+			after = AdabasObject.newObject();
+			after.putValue("ISN", isn);
+		}
+		return new AdabasObjectData(transactionId, fileName, "SUBS", dbid, fnr, new Date(), after, before);
+	}
+
+	/**
+	 * @param shape        the shape of the records
+	 * @param files        number of Adabas files, named like the synthetic file
+	 *                     with a number
+	 * @param transactions number of transactions
+	 * @param operations   operations per transaction
+	 * @param mix          percentage of inserts, updates and deletes
+	 * @param seed         seed of the random numbers, the same seed generates
+	 *                     the same workload
+	 * @return the generated workload
+	 */
+	public static Workload generate(SyntheticRecords.Shape shape, int files, long transactions, int operations,
+			int[] mix, long seed) {
+		return new GeneratedWorkload(shape, files, transactions, operations, mix, seed);
+	}
+
+	/**
+	 * @param shape the shape of the records
+	 * @param file  the recorded workload
+	 * @return the workload read from the file
+	 */
+	public static Workload read(SyntheticRecords.Shape shape, Path file) throws IOException {
+		return new RecordedWorkload(shape, file);
+	}
+
+	/**
+	 * @param fileNumber the number of the generated file, starting with 1
+	 * @return the Adabas file name
+	 */
+	public static String fileName(int fileNumber) {
+		return SyntheticRecords.FILE_NAME + "_" + fileNumber;
+	}
+
+	/**
+	 * One operation of a transaction.
+	 */
+	public static class Operation {
+		private final String _operation;
+		private final AdabasObjectData _data;
+		private final long _isn;
+
+		public Operation(String operation, AdabasObjectData data, long isn) {
+			_operation = operation;
+			_data = data;
+			_isn = isn;
+		}
+
+		public String getOperation() {
+			return _operation;
+		}
+
+		public AdabasObjectData getData() {
+			return _data;
+		}
+
+		/**
+		 * @return the line of the operation in a recorded workload
+		 */
+		public String toLine() {
+			return _operation + " " + _data.getFileName() + " " + _data.getDatabaseNumber() + " "
+					+ _data.getFileNumber() + " " + _isn;
+		}
+	}
+
+	private static class GeneratedWorkload extends Workload {
+		private final int _files;
+		private final long _transactions;
+		private final int _operations;
+		private final int[] _mix;
+		private final Random _random;
+		private final long[] _nextIsn;
+		private long _count = 0;
+
+		private GeneratedWorkload(SyntheticRecords.Shape shape, int files, long transactions, int operations,
+				int[] mix, long seed) {
+			super(shape);
+			_files = files;
+			_transactions = transactions;
+			_operations = operations;
+			_mix = mix;
+			_random = new Random(seed);
+			_nextIsn = new long[files];
+		}
+
+		@Override
+		public List<Operation> nextTransaction() {
+			if (_count++ >= _transactions) {
+				return null;
+			}
+			String transactionId = nextTransactionId();
+			ArrayList<Operation> operations = new ArrayList<>(_operations);
+			for (int i = 0; i < _operations; i++) {
+				int file = _random.nextInt(_files);
+				int percent = _random.nextInt(100);
+				String operation;
+				long isn;
+				// updates and deletes need an existing ISN, the first operation is an insert
+				if (percent < _mix[0] || _nextIsn[file] == 0) {
+					operation = "Insert";
+					isn = ++_nextIsn[file];
+				} else {
+					operation = percent < _mix[0] + _mix[1] ? "Update" : "Delete";
+					isn = 1 + (long) (_random.nextDouble() * _nextIsn[file]);
+				}
+				operations.add(new Operation(operation,
+						createData(transactionId, operation, fileName(file + 1), 47, 11 + file, isn), isn));
+			}
+			return operations;
+		}
+	}
+
+	private static class RecordedWorkload extends Workload {
+		private final Path _file;
+		private final BufferedReader _reader;
+		private int _lineNumber = 0;
+
+		private RecordedWorkload(SyntheticRecords.Shape shape, Path file) throws IOException {
+			super(shape);
+			_file = file;
+			_reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public List<Operation> nextTransaction() throws IOException {
+			String transactionId = nextTransactionId();
+			ArrayList<Operation> operations = new ArrayList<>();
+			String line;
+			while ((line = _reader.readLine()) != null) {
+				_lineNumber++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				if (line.equals(COMMIT)) {
+					return operations;
+				}
+				String[] parts = line.split("\\s+");
+				if (parts.length != 5) {
+					throw new IOException(
+							_file + " line " + _lineNumber + ": <operation> <file> <dbid> <fnr> <isn> expected");
+				}
+				try {
+					long isn = Long.parseLong(parts[4]);
+					operations.add(new Operation(parts[0], createData(transactionId, parts[0], parts[1],
+							Integer.parseInt(parts[2]), Integer.parseInt(parts[3]), isn), isn));
+				} catch (NumberFormatException e) {
+					throw new IOException(_file + " line " + _lineNumber + ": " + e.getLocalizedMessage(), e);
+				}
+			}
+			// operations after the last commit are a transaction of their own
+			return operations.isEmpty() ? null : operations;
+		}
+
+		@Override
+		public void close() throws IOException {
+			_reader.close();
+		}
+	}
+}
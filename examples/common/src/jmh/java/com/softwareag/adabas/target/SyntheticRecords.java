@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.softwareag.ada.reptor.binmessage.MetadataField;
+import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
+import com.softwareag.adabas.targetadapter.sdk.AdabasObjectData;
+
+/**
+ * Synthetic Adabas records and their metadata for benchmarks, in three shapes:
+ * <ul>
+ * <li>FLAT - a few fields like a small employee record</li>
+ * <li>WIDE - the flat fields and {@value #WIDE_FIELDS} more, alternately
+ * alphanumeric, integer and packed</li>
+ * <li>DEEP - the flat fields, a multiple-value field with
+ * {@value #OCCURRENCES} values and a periodic group with
+ * {@value #OCCURRENCES} occurrences, each with a multiple-value field</li>
+ * </ul>
+ * The values depend on the ISN only, so every run sees the same data.
+ */
+public final class SyntheticRecords {
+
+	public static final String FILE_NAME = "SYNTHETIC";
+	public static final int WIDE_FIELDS = 300;
+	public static final int OCCURRENCES = 10;
+
+	public enum Shape {
+		FLAT, WIDE, DEEP
+	}
+
+	private SyntheticRecords() {
+	}
+
+	/**
+	 * @param shape the shape of the records
+	 * @return the metadata as the Target Adapter provides it, field name to field
+	 */
+	public static Map<String, MetadataField> metadata(Shape shape) {
+		LinkedHashMap<String, MetadataField> metadata = new LinkedHashMap<>();
+		add(metadata, "PERSONNEL_ID", MetadataField.Format.STRING, 8, 0, MetadataField.Type.BASE, null);
+		add(metadata, "FIRST_NAME", MetadataField.Format.STRING, 20, 0, MetadataField.Type.BASE, null);
+		add(metadata, "NAME", MetadataField.Format.STRING, 20, 0, MetadataField.Type.BASE, null);
+		add(metadata, "CITY", MetadataField.Format.STRING, 20, 0, MetadataField.Type.BASE, null);
+		add(metadata, "BIRTH", MetadataField.Format.INTEGER, 4, 0, MetadataField.Type.BASE, null);
+		add(metadata, "SALARY", MetadataField.Format.DECIMAL, 6, 2, MetadataField.Type.BASE, null);
+		add(metadata, "LEAVE_DUE", MetadataField.Format.INTEGER, 2, 0, MetadataField.Type.BASE, null);
+		add(metadata, "HEIGHT", MetadataField.Format.FLOAT, 8, 0, MetadataField.Type.BASE, null);
+		switch (shape) {
+			case WIDE:
+				for (int i = 0; i < WIDE_FIELDS; i++) {
+					switch (i % 3) {
+						case 0:
+							add(metadata, wideName(i), MetadataField.Format.STRING, 16, 0, MetadataField.Type.BASE, null);
+							break;
+						case 1:
+							add(metadata, wideName(i), MetadataField.Format.INTEGER, 4, 0, MetadataField.Type.BASE, null);
+							break;
+						default:
+							add(metadata, wideName(i), MetadataField.Format.DECIMAL, 5, 2, MetadataField.Type.BASE, null);
+							break;
+					}
+				}
+				break;
+			case DEEP:
+				add(metadata, "LANG", MetadataField.Format.STRING, 3, 0, MetadataField.Type.MU, null);
+				add(metadata, "CURR_CODE", MetadataField.Format.STRING, 3, 0, MetadataField.Type.PE, "INCOME");
+				add(metadata, "INCOME_SALARY", MetadataField.Format.DECIMAL, 5, 0, MetadataField.Type.PE, "INCOME");
+				add(metadata, "BONUS", MetadataField.Format.DECIMAL, 5, 0, MetadataField.Type.MUPE, "INCOME");
+				break;
+			default:
+				break;
+		}
+		return metadata;
+	}
+
+	/**
+	 * @param shape the shape of the record
+	 * @param isn   the ISN
+	 * @return the record with all fields of the shape set
+	 */
+	public static AdabasObject record(Shape shape, long isn) {
+		AdabasObject ao = AdabasObject.newObject();
+		ao.putValue("ISN", isn);
+		ao.putValue("PERSONNEL_ID", String.format("%08d", isn));
+		ao.putValue("FIRST_NAME", "First" + isn % 1000);
+		ao.putValue("NAME", "Name" + isn % 10000);
+		ao.putValue("CITY", "City" + isn % 100);
+		ao.putValue("BIRTH", (int) (19500101 + isn % 50 * 10000));
+		ao.putValue("SALARY", BigDecimal.valueOf(isn % 1000000, 2));
+		ao.putValue("LEAVE_DUE", (int) (isn % 30));
+		ao.putValue("HEIGHT", 1.5 + isn % 50 / 100.0);
+		switch (shape) {
+			case WIDE:
+				for (int i = 0; i < WIDE_FIELDS; i++) {
+					switch (i % 3) {
+						case 0:
+							ao.putValue(wideName(i), "value " + (isn + i));
+							break;
+						case 1:
+							ao.putValue(wideName(i), (int) (isn + i));
+							break;
+						default:
+							ao.putValue(wideName(i), BigDecimal.valueOf((isn + i) % 100000, 2));
+							break;
+					}
+				}
+				break;
+			case DEEP:
+				ArrayList<String> lang = new ArrayList<>();
+				ArrayList<AdabasObject> income = new ArrayList<>();
+				for (int i = 0; i < OCCURRENCES; i++) {
+					lang.add(i % 2 == 0 ? "ENG" : "GER");
+					AdabasObject pe = AdabasObject.newObject();
+					pe.putValue("CURR_CODE", i % 2 == 0 ? "EUR" : "USD");
+					pe.putValue("INCOME_SALARY", BigDecimal.valueOf(30000 + (isn + i) % 50000));
+					ArrayList<BigDecimal> bonus = new ArrayList<>();
+					for (int j = 0; j < OCCURRENCES; j++) {
+						bonus.add(BigDecimal.valueOf((isn + i + j) % 5000));
+					}
+					pe.putValue("BONUS", bonus);
+					income.add(pe);
+				}
+				ao.putValue("LANG", lang);
+				ao.putValue("INCOME", income);
+				break;
+			default:
+				break;
+		}
+		return ao;
+	}
+
+	/**
+	 * @param shape the shape of the record
+	 * @param isn   the ISN
+	 * @return the data of an operation on the record, as the Target Adapter
+	 *         passes it to the User Target
+	 */
+	public static AdabasObjectData data(Shape shape, long isn) {
+		return new AdabasObjectData(Long.toString(isn), FILE_NAME, "SUBS", 47, 11, new Date(0), record(shape, isn),
+				null);
+	}
+
+	private static String wideName(int i) {
+		return String.format("FIELD_%03d", i);
+	}
+
+	private static void add(Map<String, MetadataField> metadata, String name, MetadataField.Format format, int length,
+			int precision, MetadataField.Type type, String groupName) {
+		MetadataField field = new MetadataField();
+		field.setName(name);
+		field.setFormat(format);
+		field.setLength(length);
+		field.setPrecision((short) precision);
+		field.setType(type);
+		field.setGroupName(groupName);
+		metadata.put(name, field);
+	}
+}
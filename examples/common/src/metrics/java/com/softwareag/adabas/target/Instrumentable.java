@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+/**
+ * A User Target that records metrics of its own, for example the bytes
+ * produced or the depth of its buffers, in addition to the operations and
+ * commits measured by {@link InstrumentedTarget}.
+ */
+public interface Instrumentable {
+
+	/**
+	 * Register the metrics of the target, called once after setParameter.
+	 *
+	 * @param metrics the registry of the target
+	 */
+	void setMetrics(TargetMetrics metrics);
+}
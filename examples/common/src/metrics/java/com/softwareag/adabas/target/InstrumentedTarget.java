@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.softwareag.adabas.targetadapter.sdk.AdabasObjectData;
+import com.softwareag.adabas.targetadapter.sdk.IUserTarget;
+import com.softwareag.adabas.targetadapter.sdk.IUserTarget.ParameterType;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Decorator that measures a User Target: the latency of every operation per
+ * operation and Adabas file, the commit latency and the failures. Targets
+ * implementing {@link Instrumentable} add metrics of their own.
+ * <p>
+ * The metrics are registered as MBean
+ * <code>com.softwareag.adabas.target:type=TargetMetrics,name=&lt;target name&gt;</code>,
+ * written to the log every {@value #DEFAULT_METRICS_LOG_INTERVAL} seconds and,
+ * with a metrics port, served in the Prometheus text format at
+ * <code>http://localhost:&lt;port&gt;/metrics</code>. The endpoint is bound to the
+ * loopback address only.
+ * <p>
+ * The operations are measured on the thread of the Target Adapter, a
+ * measurement costs two calls of System.nanoTime and a few lock-free
+ * increments.
+ */
+public class InstrumentedTarget implements IUserTarget {
+
+	private static final Logger logger = LogManager.getLogger();
+
+	protected static final String METRICS_LOG_INTERVAL = "metricsLogInterval";
+	protected static final String METRICS_PORT = "metricsPort";
+
+	private static final long DEFAULT_METRICS_LOG_INTERVAL = 60;
+	private static final String OBJECT_NAME = "com.softwareag.adabas.target:type=TargetMetrics,name=";
+
+	private final IUserTarget _delegate;
+	private final TargetMetrics _metrics = new TargetMetrics();
+
+	private final OperationMetrics _create = new OperationMetrics("Create");
+	private final OperationMetrics _populate = new OperationMetrics("Populate");
+	private final OperationMetrics _insert = new OperationMetrics("Insert");
+	private final OperationMetrics _update = new OperationMetrics("Update");
+	private final OperationMetrics _delete = new OperationMetrics("Delete");
+	private final LatencyHistogram _commitLatency = _metrics.histogram("adabas_target_commit_seconds",
+			"Latency of the commits.");
+	private final LongAdder _commitFailures = _metrics.counter("adabas_target_commit_failures_total",
+			"Commits that failed or returned false.");
+
+	private ScheduledExecutorService _reporter = null;
+	private HttpServer _server = null;
+	private ObjectName _objectName = null;
+
+	/**
+	 * @param delegate the measured User Target
+	 */
+	public InstrumentedTarget(IUserTarget delegate) {
+		_delegate = delegate;
+	}
+
+	/**
+	 * @return the metrics of the User Target
+	 */
+	public TargetMetrics getMetrics() {
+		return _metrics;
+	}
+
+	@Override
+	public IUserTarget setParameter(String targetName, HashMap<String, String> parameter) throws Exception {
+		long logInterval = DEFAULT_METRICS_LOG_INTERVAL;
+		if (parameter.containsKey(METRICS_LOG_INTERVAL) && !parameter.get(METRICS_LOG_INTERVAL).isEmpty()) {
+			logInterval = Long.parseLong(parameter.get(METRICS_LOG_INTERVAL));
+			if (logInterval < 0) {
+				throw new Exception("Metrics log interval must not be negative.");
+			}
+		}
+		int port = 0;
+		if (parameter.containsKey(METRICS_PORT) && !parameter.get(METRICS_PORT).isEmpty()) {
+			port = Integer.parseInt(parameter.get(METRICS_PORT));
+			if (port < 0 || port > 65535) {
+				throw new Exception("Metrics port must be between 0 and 65535.");
+			}
+		}
+		_delegate.setParameter(targetName, parameter);
+		if (_delegate instanceof Instrumentable) {
+			((Instrumentable) _delegate).setMetrics(_metrics);
+		}
+
+		registerMBean(targetName == null ? _delegate.getClass().getSimpleName() : targetName);
+		if (logInterval > 0) {
+			_reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "InstrumentedTarget-metrics");
+				thread.setDaemon(true);
+				return thread;
+			});
+			_reporter.scheduleWithFixedDelay(this::logMetrics, logInterval, logInterval, TimeUnit.SECONDS);
+		}
+		if (port > 0) {
+			startServer(port);
+		}
+		return this;
+	}
+
+	@Override
+	public boolean isServiceOkay() {
+		return _delegate.isServiceOkay();
+	}
+
+	@Override
+	public boolean commit(String transactionId) throws Exception {
+		long start = System.nanoTime();
+		boolean committed = false;
+		try {
+			committed = _delegate.commit(transactionId);
+			return committed;
+		} finally {
+			_commitLatency.record(System.nanoTime() - start);
+			if (!committed) {
+				_commitFailures.increment();
+			}
+		}
+	}
+
+	@Override
+	public void command(String command, int dbid, int fnr, String fileName, String subscription, String text1,
+			String text2) throws Exception {
+		_delegate.command(command, dbid, fnr, fileName, subscription, text1, text2);
+	}
+
+	@Override
+	public void create(AdabasObjectData data) throws Exception {
+		long start = System.nanoTime();
+		try {
+			_delegate.create(data);
+		} catch (Exception e) {
+			_create.errors.increment();
+			throw e;
+		}
+		_create.record(data, start);
+	}
+
+	@Override
+	public void populate(AdabasObjectData data) throws Exception {
+		long start = System.nanoTime();
+		try {
+			_delegate.populate(data);
+		} catch (Exception e) {
+			_populate.errors.increment();
+			throw e;
+		}
+		_populate.record(data, start);
+	}
+
+	@Override
+	public void insert(AdabasObjectData data) throws Exception {
+		long start = System.nanoTime();
+		try {
+			_delegate.insert(data);
+		} catch (Exception e) {
+			_insert.errors.increment();
+			throw e;
+		}
+		_insert.record(data, start);
+	}
+
+	@Override
+	public void update(AdabasObjectData data) throws Exception {
+		long start = System.nanoTime();
+		try {
+			_delegate.update(data);
+		} catch (Exception e) {
+			_update.errors.increment();
+			throw e;
+		}
+		_update.record(data, start);
+	}
+
+	@Override
+	public void delete(AdabasObjectData data) throws Exception {
+		long start = System.nanoTime();
+		try {
+			_delegate.delete(data);
+		} catch (Exception e) {
+			_delete.errors.increment();
+			throw e;
+		}
+		_delete.record(data, start);
+	}
+
+	@Override
+	public void close() throws Exception {
+		if (_reporter != null) {
+			_reporter.shutdown();
+		}
+		if (_server != null) {
+			_server.stop(0);
+		}
+		try {
+			_delegate.close();
+		} finally {
+			logMetrics();
+			if (_objectName != null) {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(_objectName);
+			}
+		}
+	}
+
+	@Override
+	public Object[][] getMetadata() {
+		Object[][] metadata = _delegate.getMetadata();
+		if (metadata == null) {
+			metadata = new Object[0][];
+		}
+		Object[][] result = Arrays.copyOf(metadata, metadata.length + 2);
+		result[metadata.length] = new Object[] { METRICS_LOG_INTERVAL, "Metrics Log Interval (s)",
+				ParameterType.Integer };
+		result[metadata.length + 1] = new Object[] { METRICS_PORT, "Metrics Port", ParameterType.Integer };
+		return result;
+	}
+
+	@Override
+	public Object[][] getProperties() {
+		return _delegate.getProperties();
+	}
+
+	@Override
+	public String getTargetTypeName() {
+		return _delegate.getTargetTypeName();
+	}
+
+	private void registerMBean(String targetName) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName(OBJECT_NAME + ObjectName.quote(targetName));
+			server.registerMBean(_metrics, objectName);
+			_objectName = objectName;
+		} catch (Exception e) {
+			// the metrics are still logged and served
+			logger.warn("Metrics of " + targetName + " not registered in JMX: " + e.getLocalizedMessage());
+		}
+	}
+
+	private void startServer(int port) throws IOException {
+		_server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		_server.createContext("/metrics", exchange -> {
+			try {
+				byte[] body = _metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			} finally {
+				exchange.close();
+			}
+		});
+		_server.setExecutor(null);
+		_server.start();
+		logger.info("Metrics served at http://localhost:" + port + "/metrics");
+	}
+
+	private void logMetrics() {
+		StringBuilder sb = new StringBuilder("Metrics of " + _delegate.getClass().getSimpleName() + ":");
+		for (Entry<String, Object> entry : _metrics.snapshot().entrySet()) {
+			sb.append("\n  ").append(entry.getKey()).append(' ').append(entry.getValue());
+		}
+		logger.info(sb.toString());
+	}
+
+	/**
+	 * The metrics of one operation, the histograms per Adabas file are created on
+	 * first use.
+	 */
+	private class OperationMetrics {
+		private final String operation;
+		private final ConcurrentHashMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+		private final LongAdder errors;
+
+		private OperationMetrics(String operation) {
+			this.operation = operation;
+			errors = _metrics.counter("adabas_target_errors_total", "Operations that threw an exception.",
+					"operation", operation);
+		}
+
+		private void record(AdabasObjectData data, long start) {
+			long nanos = System.nanoTime() - start;
+			String file = data.getFileName() == null ? "" : data.getFileName();
+			LatencyHistogram histogram = latencies.get(file);
+			if (histogram == null) {
+				histogram = latencies.computeIfAbsent(file,
+						f -> _metrics.histogram("adabas_target_operation_seconds",
+								"Latency of the operations per Adabas file, the count is the number of events.",
+								"operation", operation, "file", f));
+			}
+			histogram.record(nanos);
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with log-linear buckets like HdrHistogram: every power of
+ * two is split into {@value #HALF_COUNT} linear buckets, so a value is kept
+ * with a relative error of about 3%. The buckets cover 0 to 2^40 nanoseconds
+ * (18 minutes), larger values count as the largest bucket.
+ * <p>
+ * Recording is lock-free and does not allocate, several threads can record at
+ * the same time. Readers see a snapshot that is not necessarily consistent
+ * across buckets.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BITS = 6;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int HALF_COUNT = SUB_COUNT / 2;
+	private static final long MAX_VALUE = (1L << 40) - 1;
+	private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+	private final AtomicLongArray _buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder _count = new LongAdder();
+	private final LongAdder _sum = new LongAdder();
+	private final LongAccumulator _max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * @param nanos the latency in nanoseconds, negative values count as 0
+	 */
+	public void record(long nanos) {
+		long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+		_buckets.incrementAndGet(index(value));
+		_count.increment();
+		_sum.add(value);
+		_max.accumulate(value);
+	}
+
+	public long getCount() {
+		return _count.sum();
+	}
+
+	/**
+	 * @return the sum of all values in nanoseconds
+	 */
+	public long getSum() {
+		return _sum.sum();
+	}
+
+	/**
+	 * @return the largest value in nanoseconds
+	 */
+	public long getMax() {
+		return _max.get();
+	}
+
+	/**
+	 * @param percentile the percentile, for example 99.9
+	 * @return the value at the percentile in nanoseconds, 0 without values
+	 */
+	public long getPercentile(double percentile) {
+		long count = 0;
+		long[] buckets = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets[i] = _buckets.get(i);
+			count += buckets[i];
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets[i];
+			if (seen >= rank) {
+				return Math.min(middle(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	private static int index(long value) {
+		if (value < SUB_COUNT) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+		return SUB_COUNT + (shift - 1) * HALF_COUNT + (int) (value >>> shift) - HALF_COUNT;
+	}
+
+	/**
+	 * @return the middle of the values of a bucket
+	 */
+	private static long middle(int index) {
+		if (index < SUB_COUNT) {
+			return index;
+		}
+		int shift = (index - SUB_COUNT) / HALF_COUNT + 1;
+		long lower = (long) (HALF_COUNT + (index - SUB_COUNT) % HALF_COUNT) << shift;
+		return lower + (1L << shift) / 2;
+	}
+}
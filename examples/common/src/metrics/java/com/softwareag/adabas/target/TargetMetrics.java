@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+
+/**
+ * Registry of the counters, gauges and latency histograms of one User Target.
+ * A metric has a name and optional labels, for example the operation and the
+ * file name. Callers register a metric once and keep the returned counter or
+ * histogram, updating it is then a lock-free increment.
+ * <p>
+ * The metrics are read as JMX attributes (the registry is a
+ * {@link DynamicMBean}), in the Prometheus text format or as log lines.
+ * Histograms are reported as summaries in seconds with the quantiles 0.5, 0.9,
+ * 0.99 and 0.999.
+ */
+public class TargetMetrics implements DynamicMBean {
+
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+	/**
+	 * Sorted by name and labels, so the metrics of one name are listed together.
+	 */
+	private final ConcurrentSkipListMap<String, Metric> _metrics = new ConcurrentSkipListMap<>();
+
+	/**
+	 * @param name   the metric name, for example adabas_target_operations_total
+	 * @param help   the description
+	 * @param labels label names and values, alternating
+	 * @return the counter, the same for the same name and labels
+	 */
+	public LongAdder counter(String name, String help, String... labels) {
+		return (LongAdder) register(name, help, Kind.COUNTER, LongAdder::new, labels).value;
+	}
+
+	/**
+	 * @param name   the metric name, ending with _seconds
+	 * @param help   the description
+	 * @param labels label names and values, alternating
+	 * @return the histogram, the same for the same name and labels
+	 */
+	public LatencyHistogram histogram(String name, String help, String... labels) {
+		return (LatencyHistogram) register(name, help, Kind.SUMMARY, LatencyHistogram::new, labels).value;
+	}
+
+	/**
+	 * @param name     the metric name
+	 * @param help     the description
+	 * @param supplier reads the current value, it is called by the reporting
+	 *                 threads
+	 * @param labels   label names and values, alternating
+	 */
+	public void gauge(String name, String help, LongSupplier supplier, String... labels) {
+		register(name, help, Kind.GAUGE, () -> supplier, labels);
+	}
+
+	private Metric register(String name, String help, Kind kind, java.util.function.Supplier<Object> factory,
+			String... labels) {
+		String renderedLabels = renderLabels(labels);
+		String key = name + "{" + renderedLabels + "}";
+		return _metrics.computeIfAbsent(key, k -> new Metric(name, help, kind, renderedLabels, factory.get()));
+	}
+
+	private static String renderLabels(String... labels) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i + 1 < labels.length; i += 2) {
+			if (sb.length() > 0) {
+				sb.append(',');
+			}
+			sb.append(labels[i]).append("=\"");
+			String value = labels[i + 1] == null ? "" : labels[i + 1];
+			for (int j = 0; j < value.length(); j++) {
+				char c = value.charAt(j);
+				if (c == '\\' || c == '"') {
+					sb.append('\\').append(c);
+				} else if (c == '\n') {
+					sb.append("\\n");
+				} else {
+					sb.append(c);
+				}
+			}
+			sb.append('"');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return the metrics in the Prometheus text exposition format
+	 */
+	public String toPrometheus() {
+		StringBuilder sb = new StringBuilder();
+		String lastName = null;
+		for (Metric metric : _metrics.values()) {
+			if (!metric.name.equals(lastName)) {
+				lastName = metric.name;
+				sb.append("# HELP ").append(metric.name).append(' ').append(metric.help).append('\n');
+				sb.append("# TYPE ").append(metric.name).append(' ').append(metric.kind.type).append('\n');
+			}
+			if (metric.kind == Kind.SUMMARY) {
+				LatencyHistogram histogram = (LatencyHistogram) metric.value;
+				for (double quantile : QUANTILES) {
+					String labels = metric.labels.isEmpty() ? "" : metric.labels + ",";
+					sb.append(metric.name).append('{').append(labels).append("quantile=\"").append(quantile)
+							.append("\"} ").append(histogram.getPercentile(quantile * 100) / 1e9).append('\n');
+				}
+				sb.append(metric.name).append("_sum").append(braces(metric.labels)).append(' ')
+						.append(histogram.getSum() / 1e9).append('\n');
+				sb.append(metric.name).append("_count").append(braces(metric.labels)).append(' ')
+						.append(histogram.getCount()).append('\n');
+			} else {
+				sb.append(metric.name).append(braces(metric.labels)).append(' ').append(metric.longValue())
+						.append('\n');
+			}
+		}
+		return sb.toString();
+	}
+
+	private static String braces(String labels) {
+		return labels.isEmpty() ? "" : "{" + labels + "}";
+	}
+
+	/**
+	 * @return one value per attribute: counters and gauges as Long, histograms as
+	 *         count and p50, p99 and max in milliseconds
+	 */
+	public Map<String, Object> snapshot() {
+		LinkedHashMap<String, Object> snapshot = new LinkedHashMap<>();
+		for (Entry<String, Metric> entry : _metrics.entrySet()) {
+			Metric metric = entry.getValue();
+			String key = metric.name + braces(metric.labels);
+			if (metric.kind == Kind.SUMMARY) {
+				LatencyHistogram histogram = (LatencyHistogram) metric.value;
+				snapshot.put(key + ".count", histogram.getCount());
+				snapshot.put(key + ".p50_ms", histogram.getPercentile(50) / 1e6);
+				snapshot.put(key + ".p99_ms", histogram.getPercentile(99) / 1e6);
+				snapshot.put(key + ".max_ms", histogram.getMax() / 1e6);
+			} else {
+				snapshot.put(key, metric.longValue());
+			}
+		}
+		return snapshot;
+	}
+
+	@Override
+	public Object getAttribute(String attribute) throws AttributeNotFoundException {
+		Object value = snapshot().get(attribute);
+		if (value == null) {
+			throw new AttributeNotFoundException(attribute);
+		}
+		return value;
+	}
+
+	@Override
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+	}
+
+	@Override
+	public AttributeList getAttributes(String[] attributes) {
+		Map<String, Object> snapshot = snapshot();
+		AttributeList list = new AttributeList();
+		for (String attribute : attributes) {
+			if (snapshot.containsKey(attribute)) {
+				list.add(new Attribute(attribute, snapshot.get(attribute)));
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature) {
+		throw new UnsupportedOperationException(actionName);
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		ArrayList<MBeanAttributeInfo> attributes = new ArrayList<>();
+		for (Entry<String, Object> entry : snapshot().entrySet()) {
+			attributes.add(new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(),
+					entry.getKey(), true, false, false));
+		}
+		return new MBeanInfo(getClass().getName(), "Metrics of the User Target",
+				attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, new MBeanOperationInfo[0], null);
+	}
+
+	private enum Kind {
+		COUNTER("counter"), GAUGE("gauge"), SUMMARY("summary");
+
+		private final String type;
+
+		Kind(String type) {
+			this.type = type;
+		}
+	}
+
+	private static class Metric {
+		private final String name;
+		private final String help;
+		private final Kind kind;
+		private final String labels;
+		private final Object value;
+
+		private Metric(String name, String help, Kind kind, String labels, Object value) {
+			this.name = name;
+			this.help = help;
+			this.kind = kind;
+			this.labels = labels;
+			this.value = value;
+		}
+
+		private long longValue() {
+			return kind == Kind.COUNTER ? ((LongAdder) value).sum() : ((LongSupplier) value).getAsLong();
+		}
+	}
+}
@@ -0,0 +1,471 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
+import com.softwareag.adabas.targetadapter.sdk.AdabasObjectData;
+import com.softwareag.adabas.targetadapter.sdk.IUserTarget;
+import com.softwareag.adabas.targetadapter.sdk.IUserTarget.ParameterType;
+
+/**
+ * Decorator that writes the operations to a local {@link WriteAheadSpool}
+ * instead of the sink. The commit returns as soon as the transaction is on the
+ * spool; a drainer thread delivers the transactions in order to the User
+ * Target and acknowledges them when its commit succeeded. A failed delivery is
+ * repeated with growing pauses, so the replication keeps running while the
+ * sink is slow or down until the spool is full. Before a transaction is
+ * delivered again, an {@link Abortable} User Target discards what it received
+ * of the failed attempt. A transaction that fails the maximum number of
+ * attempts while the User Target reports its service as okay is parked: its
+ * frames are moved to the <code>parked</code> folder of the spool directory and
+ * the next transaction is delivered.
+ * <p>
+ * Transactions that are spooled but not delivered when the process ends are
+ * delivered after the restart. The delivery is at least once: a transaction
+ * whose commit failed after a part of it reached the sink, or whose
+ * acknowledgement was lost in a crash, is delivered again.
+ */
+public class SpooledTarget implements IUserTarget, Instrumentable {
+
+	private static final Logger logger = LogManager.getLogger();
+
+	protected static final String SPOOL_DIRECTORY = "spoolDirectory";
+	protected static final String SPOOL_SEGMENT_SIZE = "spoolSegmentSize";
+	protected static final String SPOOL_MAX_BYTES = "spoolMaxBytes";
+	protected static final String SPOOL_SYNC = "spoolSync";
+	protected static final String SPOOL_MAX_ATTEMPTS = "spoolMaxAttempts";
+
+	private static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+	private static final long DEFAULT_MAX_BYTES = 4L * 1024 * 1024 * 1024;
+	private static final int DEFAULT_MAX_ATTEMPTS = 10;
+	private static final String PARKED = "parked";
+	/**
+	 * Pauses between the attempts of a failed delivery in milliseconds.
+	 */
+	private static final long MIN_RETRY_DELAY = 1000;
+	private static final long MAX_RETRY_DELAY = 60000;
+	private static final long POLL_INTERVAL = 1000;
+
+	private static final byte OPERATION = 'O';
+	private static final byte COMMAND = 'X';
+	private static final byte COMMIT = 'C';
+
+	/**
+	 * The spooled Adabas objects contain only Java types.
+	 */
+	private static final ObjectInputFilter OBJECT_FILTER = ObjectInputFilter.Config
+			.createFilter("java.**;com.softwareag.adabas.**;!*");
+
+	private final IUserTarget _delegate;
+	private WriteAheadSpool _spool = null;
+	private Thread _drainer = null;
+	private volatile boolean _closed = false;
+	private int _maxAttempts = DEFAULT_MAX_ATTEMPTS;
+	private Path _parkDirectory = null;
+	/**
+	 * Parked transactions, null without metrics.
+	 */
+	private LongAdder _parked = null;
+
+	/**
+	 * @param delegate the User Target the spooled transactions are delivered to
+	 */
+	public SpooledTarget(IUserTarget delegate) {
+		_delegate = delegate;
+	}
+
+	@Override
+	public IUserTarget setParameter(String targetName, HashMap<String, String> parameter) throws Exception {
+		if (!parameter.containsKey(SPOOL_DIRECTORY) || parameter.get(SPOOL_DIRECTORY).isEmpty()) {
+			throw new Exception("Spool directory not set.");
+		}
+		long segmentSize = getNumber(parameter, SPOOL_SEGMENT_SIZE, DEFAULT_SEGMENT_SIZE);
+		long maxBytes = getNumber(parameter, SPOOL_MAX_BYTES, DEFAULT_MAX_BYTES);
+		boolean sync = !parameter.containsKey(SPOOL_SYNC) || parameter.get(SPOOL_SYNC).isEmpty()
+				|| Boolean.parseBoolean(parameter.get(SPOOL_SYNC));
+		if (parameter.containsKey(SPOOL_MAX_ATTEMPTS) && !parameter.get(SPOOL_MAX_ATTEMPTS).isEmpty()) {
+			_maxAttempts = Integer.parseInt(parameter.get(SPOOL_MAX_ATTEMPTS));
+			if (_maxAttempts < 0) {
+				throw new Exception("Parameter " + SPOOL_MAX_ATTEMPTS + " must not be negative.");
+			}
+		}
+		_delegate.setParameter(targetName, parameter);
+		_spool = new WriteAheadSpool(Paths.get(parameter.get(SPOOL_DIRECTORY)), segmentSize, maxBytes, sync);
+		_parkDirectory = Paths.get(parameter.get(SPOOL_DIRECTORY), PARKED);
+		logger.info("Spool directory: " + parameter.get(SPOOL_DIRECTORY) + ", segment size: " + segmentSize
+				+ ", maximum bytes: " + maxBytes + ", sync: " + sync + ", maximum attempts: " + _maxAttempts);
+		_drainer = new Thread(this::drain, "SpooledTarget-drainer");
+		_drainer.setDaemon(true);
+		_drainer.start();
+		return this;
+	}
+
+	@Override
+	public void setMetrics(TargetMetrics metrics) {
+		if (_delegate instanceof Instrumentable) {
+			((Instrumentable) _delegate).setMetrics(metrics);
+		}
+		metrics.gauge("adabas_target_spool_bytes", "Size of the spool segment files.", _spool::getBytes);
+		metrics.gauge("adabas_target_spool_segments", "Number of spool segment files.", _spool::getSegmentCount);
+		_parked = metrics.counter("adabas_target_spool_parked_total",
+				"Transactions parked after the maximum number of failed attempts.");
+	}
+
+	/**
+	 * The spool takes the data while the sink is down, a sink that is not
+	 * available is only reported.
+	 */
+	@Override
+	public boolean isServiceOkay() {
+		if (!_delegate.isServiceOkay()) {
+			logger.warn("Service of " + _delegate.getClass().getSimpleName()
+					+ " is not okay, the transactions are spooled.");
+		}
+		return true;
+	}
+
+	@Override
+	public boolean commit(String transactionId) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(COMMIT);
+		writeString(out, transactionId);
+		out.flush();
+		_spool.append(bytes.toByteArray());
+		_spool.publish();
+		return true;
+	}
+
+	/**
+	 * Commands are spooled, they are delivered in order with the next commit.
+	 */
+	@Override
+	public void command(String command, int dbid, int fnr, String fileName, String subscription, String text1,
+			String text2) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(COMMAND);
+		writeString(out, command);
+		out.writeInt(dbid);
+		out.writeInt(fnr);
+		writeString(out, fileName);
+		writeString(out, subscription);
+		writeString(out, text1);
+		writeString(out, text2);
+		out.flush();
+		_spool.append(bytes.toByteArray());
+	}
+
+	@Override
+	public void create(AdabasObjectData data) throws Exception {
+		append("Create", data);
+	}
+
+	@Override
+	public void populate(AdabasObjectData data) throws Exception {
+		append("Populate", data);
+	}
+
+	@Override
+	public void insert(AdabasObjectData data) throws Exception {
+		append("Insert", data);
+	}
+
+	@Override
+	public void update(AdabasObjectData data) throws Exception {
+		append("Update", data);
+	}
+
+	@Override
+	public void delete(AdabasObjectData data) throws Exception {
+		append("Delete", data);
+	}
+
+	/**
+	 * Stop the drainer after the transaction it delivers, the remaining
+	 * transactions are delivered after the restart.
+	 */
+	@Override
+	public void close() throws Exception {
+		_closed = true;
+		if (_drainer != null) {
+			_drainer.join();
+		}
+		try {
+			if (_spool != null) {
+				if (!_spool.isAcknowledged()) {
+					logger.info("Spool keeps " + _spool.getBytes()
+							+ " bytes with transactions that are delivered after the restart.");
+				}
+				_spool.close();
+			}
+		} finally {
+			_delegate.close();
+		}
+	}
+
+	@Override
+	public Object[][] getMetadata() {
+		Object[][] metadata = _delegate.getMetadata();
+		if (metadata == null) {
+			metadata = new Object[0][];
+		}
+		Object[][] result = Arrays.copyOf(metadata, metadata.length + 5);
+		result[metadata.length] = new Object[] { SPOOL_DIRECTORY, "Spool Directory", ParameterType.Directory };
+		result[metadata.length + 1] = new Object[] { SPOOL_SEGMENT_SIZE, "Spool Segment Size",
+				ParameterType.Integer };
+		result[metadata.length + 2] = new Object[] { SPOOL_MAX_BYTES, "Spool Maximum Bytes", ParameterType.Integer };
+		result[metadata.length + 3] = new Object[] { SPOOL_SYNC, "Spool Sync", ParameterType.Boolean };
+		result[metadata.length + 4] = new Object[] { SPOOL_MAX_ATTEMPTS, "Spool Maximum Attempts",
+				ParameterType.Integer };
+		return result;
+	}
+
+	@Override
+	public Object[][] getProperties() {
+		return _delegate.getProperties();
+	}
+
+	@Override
+	public String getTargetTypeName() {
+		return _delegate.getTargetTypeName();
+	}
+
+	private void append(String operation, AdabasObjectData data) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(OPERATION);
+		writeString(out, operation);
+		writeString(out, data.getTransactionId());
+		writeString(out, data.getFileName());
+		writeString(out, data.getSubscription());
+		out.writeInt(data.getDatabaseNumber());
+		out.writeInt(data.getFileNumber());
+		out.writeLong(data.getCommitDate() == null ? Long.MIN_VALUE : data.getCommitDate().getTime());
+		out.flush();
+		try (ObjectOutputStream objects = new ObjectOutputStream(bytes)) {
+			objects.writeObject(data.getAdabasObject());
+			objects.writeObject(data.getBeforeObject());
+		}
+		_spool.append(bytes.toByteArray());
+	}
+
+	/**
+	 * Deliver the spooled transactions until the target is closed, runs on the
+	 * drainer thread.
+	 */
+	private void drain() {
+		long delay = MIN_RETRY_DELAY;
+		int attempts = 0;
+		while (!_closed) {
+			try {
+				deliverTransaction();
+				delay = MIN_RETRY_DELAY;
+				attempts = 0;
+			} catch (InterruptedException e) {
+				abortDelegate();
+				_spool.rewind();
+				return;
+			} catch (Exception e) {
+				abortDelegate();
+				_spool.rewind();
+				if (_closed) {
+					return;
+				}
+				// a sink that is down does not make the transaction a poison
+				if (_delegate.isServiceOkay()) {
+					attempts++;
+				}
+				if (_maxAttempts > 0 && attempts >= _maxAttempts) {
+					try {
+						Path file = park();
+						logger.error("Spooled transaction failed " + attempts + " times, parked in " + file + ": "
+								+ e.getLocalizedMessage());
+						delay = MIN_RETRY_DELAY;
+						attempts = 0;
+						continue;
+					} catch (Exception pe) {
+						_spool.rewind();
+						logger.error("Parking of a spooled transaction failed: " + pe.getLocalizedMessage());
+					}
+				}
+				logger.error("Delivery of a spooled transaction failed, next attempt in " + delay + " ms: "
+						+ e.getLocalizedMessage());
+				try {
+					// in steps, so close does not wait for the whole pause
+					for (long slept = 0; slept < delay && !_closed; slept += POLL_INTERVAL) {
+						Thread.sleep(Math.min(POLL_INTERVAL, delay - slept));
+					}
+				} catch (InterruptedException ie) {
+					return;
+				}
+				delay = Math.min(delay * 2, MAX_RETRY_DELAY);
+			}
+		}
+	}
+
+	/**
+	 * Let the User Target discard the operations of the failed attempt.
+	 */
+	private void abortDelegate() {
+		if (_delegate instanceof Abortable) {
+			try {
+				((Abortable) _delegate).abort();
+			} catch (Exception e) {
+				logger.error("Abort of the failed transaction failed: " + e.getLocalizedMessage());
+			}
+		}
+	}
+
+	/**
+	 * Move the frames of the next transaction to a file of the park directory
+	 * and acknowledge them. The file contains the frames with a 4 byte length
+	 * prefix each.
+	 *
+	 * @return the file
+	 */
+	private Path park() throws Exception {
+		Files.createDirectories(_parkDirectory);
+		Path file = _parkDirectory.resolve(System.currentTimeMillis() + "." + PARKED);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+			_spool.mark();
+			byte[] frame;
+			while ((frame = _spool.next(POLL_INTERVAL)) != null) {
+				out.writeInt(frame.length);
+				out.write(frame);
+				if (frame.length > 0 && frame[0] == COMMIT) {
+					out.flush();
+					_spool.acknowledge();
+					if (_parked != null) {
+						_parked.increment();
+					}
+					return file;
+				}
+			}
+		}
+		Files.delete(file);
+		throw new IOException("The transaction to park is incomplete.");
+	}
+
+	/**
+	 * Deliver the next transaction, the spool publishes whole transactions.
+	 */
+	private void deliverTransaction() throws Exception {
+		_spool.mark();
+		byte[] frame;
+		while ((frame = _spool.next(POLL_INTERVAL)) != null) {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+			byte type = in.readByte();
+			if (type == COMMIT) {
+				String transactionId = readString(in);
+				if (!_delegate.commit(transactionId)) {
+					throw new Exception("Commit of transaction " + transactionId + " failed.");
+				}
+				_spool.acknowledge();
+				return;
+			} else if (type == COMMAND) {
+				_delegate.command(readString(in), in.readInt(), in.readInt(), readString(in), readString(in),
+						readString(in), readString(in));
+			} else if (type == OPERATION) {
+				deliverOperation(in);
+			} else {
+				throw new IOException("Unknown frame type " + type + " in the spool.");
+			}
+		}
+	}
+
+	private void deliverOperation(DataInputStream in) throws Exception {
+		String operation = readString(in);
+		String transactionId = readString(in);
+		String fileName = readString(in);
+		String subscription = readString(in);
+		int dbid = in.readInt();
+		int fnr = in.readInt();
+		long time = in.readLong();
+		AdabasObject after;
+		AdabasObject before;
+		try (ObjectInputStream objects = new ObjectInputStream(in)) {
+			objects.setObjectInputFilter(OBJECT_FILTER);
+			after = (AdabasObject) objects.readObject();
+			before = (AdabasObject) objects.readObject();
+		}
+		AdabasObjectData data = new AdabasObjectData(transactionId, fileName, subscription, dbid, fnr,
+				time == Long.MIN_VALUE ? null : new Date(time), after, before);
+		switch (operation) {
+			case "Create":
+				_delegate.create(data);
+				break;
+			case "Populate":
+				_delegate.populate(data);
+				break;
+			case "Insert":
+				_delegate.insert(data);
+				break;
+			case "Update":
+				_delegate.update(data);
+				break;
+			case "Delete":
+				_delegate.delete(data);
+				break;
+			default:
+				throw new IOException("Unknown operation " + operation + " in the spool.");
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static long getNumber(HashMap<String, String> parameter, String name, long defaultValue)
+			throws Exception {
+		String value = parameter.get(name);
+		if (value == null || value.isEmpty()) {
+			return defaultValue;
+		}
+		long number = Long.parseLong(value);
+		if (number <= 0) {
+			throw new Exception("Parameter " + name + " must be greater than 0.");
+		}
+		return number;
+	}
+}
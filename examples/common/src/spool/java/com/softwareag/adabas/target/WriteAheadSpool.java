@@ -0,0 +1,459 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.zip.CRC32C;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Append-only spool of frames in memory-mapped segment files. A writer appends
+ * frames and publishes them in batches, for example one transaction; one reader
+ * takes the published frames in order and acknowledges them once they are
+ * delivered. Segments whose frames are all acknowledged are deleted.
+ * <p>
+ * A frame is the payload length (int), flags (byte), the CRC-32C of the payload
+ * (int) and the payload. The last frame of a batch is flagged as published,
+ * the last delivered frame as acknowledged. When a spool is opened, the frames
+ * after the last acknowledged frame up to the last published frame are read
+ * again, frames after the last published frame are discarded. Frames are
+ * written in place without system calls; with sync the segment is forced to
+ * the storage device when a batch is published, otherwise the data survives a
+ * crash of the process but not of the operating system.
+ * <p>
+ * The methods are synchronized, the writer and the reader may be different
+ * threads.
+ */
+public class WriteAheadSpool implements Closeable {
+
+	private static final Logger logger = LogManager.getLogger();
+
+	private static final int HEADER = 9;
+	private static final int FLAGS = 4;
+	private static final int CRC = 5;
+	private static final byte PUBLISHED = 1;
+	private static final byte ACKNOWLEDGED = 2;
+	private static final String SUFFIX = ".spool";
+
+	private final Path _directory;
+	private final long _segmentSize;
+	private final long _maxBytes;
+	private final boolean _sync;
+
+	/**
+	 * The segments in the order of their sequence numbers, the last one is
+	 * written.
+	 */
+	private final ArrayList<Segment> _segments = new ArrayList<>();
+	/**
+	 * Deleted segments whose files could not be removed yet, for example because
+	 * they are still mapped on Windows.
+	 */
+	private final ArrayList<Path> _undeleted = new ArrayList<>();
+	private long _nextSequence = 1;
+	private long _bytes = 0;
+
+	private int _writeOffset = 0;
+	/**
+	 * Last frame appended since the last publish, -1 if none.
+	 */
+	private int _lastFrame = -1;
+
+	private Segment _publishedSegment = null;
+	private int _publishedOffset = 0;
+	private Segment _readSegment = null;
+	private int _readOffset = 0;
+	private Segment _markSegment = null;
+	private int _markOffset = 0;
+	private Segment _acknowledgedSegment = null;
+	private int _acknowledgedOffset = 0;
+	/**
+	 * Last frame returned by {@link #next(long)}, -1 if none.
+	 */
+	private Segment _readFrameSegment = null;
+	private int _readFrame = -1;
+	private boolean _closed = false;
+
+	/**
+	 * Open the spool, the published but not acknowledged frames of an earlier run
+	 * are read first.
+	 *
+	 * @param directory   the directory of the segment files, created if missing
+	 * @param segmentSize size of a segment file in bytes, larger frames get a
+	 *                    segment of their own
+	 * @param maxBytes    size of all segment files, further appends wait until
+	 *                    the reader acknowledged frames
+	 * @param sync        force the segment to the storage device when publishing
+	 */
+	public WriteAheadSpool(Path directory, long segmentSize, long maxBytes, boolean sync) throws IOException {
+		if (segmentSize <= HEADER + 4 || segmentSize > Integer.MAX_VALUE) {
+			throw new IOException("Segment size must be between " + (HEADER + 5) + " and " + Integer.MAX_VALUE + ".");
+		}
+		_directory = directory;
+		_segmentSize = segmentSize;
+		_maxBytes = maxBytes;
+		_sync = sync;
+		Files.createDirectories(directory);
+		recover();
+	}
+
+	/**
+	 * Append a frame, it is read after the next {@link #publish()}. Waits while
+	 * the spool is full and the reader has published frames to deliver.
+	 *
+	 * @param payload the data of the frame
+	 */
+	public synchronized void append(byte[] payload) throws IOException, InterruptedException {
+		checkOpen();
+		int frame = HEADER + payload.length;
+		Segment segment = _segments.isEmpty() ? null : _segments.get(_segments.size() - 1);
+		// a zero length after the frame marks the end of the segment
+		if (segment == null || (long) _writeOffset + frame + 4 > segment.size) {
+			long size = Math.max(_segmentSize, frame + 4L);
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Frame of " + payload.length + " bytes is too large for the spool.");
+			}
+			while (_bytes + size > _maxBytes && !isAcknowledged()) {
+				wait();
+				checkOpen();
+			}
+			if (segment != null && _sync) {
+				segment.buffer.force();
+			}
+			segment = createSegment((int) size);
+		}
+		MappedByteBuffer buffer = segment.buffer;
+		CRC32C crc = new CRC32C();
+		crc.update(payload);
+		buffer.put(_writeOffset + HEADER, payload);
+		buffer.put(_writeOffset + FLAGS, (byte) 0);
+		buffer.putInt(_writeOffset + CRC, (int) crc.getValue());
+		buffer.putInt(_writeOffset + frame, 0);
+		buffer.putInt(_writeOffset, payload.length);
+		_lastFrame = _writeOffset;
+		_writeOffset += frame;
+		segment.end = _writeOffset;
+	}
+
+	/**
+	 * Make the frames appended since the last publish visible to the reader and
+	 * durable.
+	 */
+	public synchronized void publish() throws IOException {
+		checkOpen();
+		if (_lastFrame < 0) {
+			return;
+		}
+		Segment segment = _segments.get(_segments.size() - 1);
+		segment.buffer.put(_lastFrame + FLAGS, PUBLISHED);
+		if (_sync) {
+			segment.buffer.force();
+		}
+		_publishedSegment = segment;
+		_publishedOffset = _writeOffset;
+		_lastFrame = -1;
+		notifyAll();
+	}
+
+	/**
+	 * @param timeout maximum wait in milliseconds
+	 * @return the payload of the next published frame, null if there is none
+	 *         within the timeout or the spool is closed
+	 */
+	public synchronized byte[] next(long timeout) throws IOException, InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		while (!hasNext()) {
+			long wait = deadline - System.currentTimeMillis();
+			if (wait <= 0 || _closed) {
+				return null;
+			}
+			wait(wait);
+		}
+		MappedByteBuffer buffer = _readSegment.buffer;
+		int length = buffer.getInt(_readOffset);
+		byte[] payload = new byte[length];
+		buffer.get(_readOffset + HEADER, payload);
+		CRC32C crc = new CRC32C();
+		crc.update(payload);
+		if ((int) crc.getValue() != buffer.getInt(_readOffset + CRC)) {
+			throw new IOException("Checksum error in " + _readSegment.path + " at offset " + _readOffset + ".");
+		}
+		_readFrameSegment = _readSegment;
+		_readFrame = _readOffset;
+		_readOffset += HEADER + length;
+		return payload;
+	}
+
+	/**
+	 * Remember the read position, for example at the start of a transaction.
+	 */
+	public synchronized void mark() {
+		_markSegment = _readSegment;
+		_markOffset = _readOffset;
+	}
+
+	/**
+	 * Read again from the marked position, after a failed delivery.
+	 */
+	public synchronized void rewind() {
+		// without segment at the time of the mark, the reader starts at the beginning
+		_readSegment = _markSegment != null || _segments.isEmpty() ? _markSegment : _segments.get(0);
+		_readOffset = _markOffset;
+		_readFrame = -1;
+	}
+
+	/**
+	 * The frames read so far are delivered, the segments before the read position
+	 * are deleted.
+	 */
+	public synchronized void acknowledge() {
+		if (_readFrame < 0 || _closed) {
+			return;
+		}
+		MappedByteBuffer buffer = _readFrameSegment.buffer;
+		buffer.put(_readFrame + FLAGS, (byte) (buffer.get(_readFrame + FLAGS) | ACKNOWLEDGED));
+		_readFrame = -1;
+		_acknowledgedSegment = _readSegment;
+		_acknowledgedOffset = _readOffset;
+		while (_segments.get(0) != _readSegment) {
+			deleteSegment(_segments.remove(0));
+		}
+		retryDelete();
+		notifyAll();
+	}
+
+	/**
+	 * @return the size of the segment files in bytes
+	 */
+	public synchronized long getBytes() {
+		return _bytes;
+	}
+
+	/**
+	 * @return number of segment files
+	 */
+	public synchronized int getSegmentCount() {
+		return _segments.size();
+	}
+
+	/**
+	 * @return true if all published frames are acknowledged
+	 */
+	public synchronized boolean isAcknowledged() {
+		return _publishedSegment == null
+				|| (_acknowledgedSegment == _publishedSegment && _acknowledgedOffset == _publishedOffset);
+	}
+
+	/**
+	 * Close the spool, unpublished frames are discarded when it is opened again.
+	 */
+	@Override
+	public synchronized void close() {
+		if (_closed) {
+			return;
+		}
+		_closed = true;
+		if (_sync && !_segments.isEmpty()) {
+			_segments.get(_segments.size() - 1).buffer.force();
+		}
+		// the buffers are unmapped by the garbage collector
+		for (Segment segment : _segments) {
+			segment.buffer = null;
+		}
+		notifyAll();
+	}
+
+	private boolean hasNext() {
+		if (_publishedSegment == null || _closed) {
+			return false;
+		}
+		while (_readSegment != _publishedSegment || _readOffset < _publishedOffset) {
+			if (_readOffset < _readSegment.end) {
+				return true;
+			}
+			_readSegment = _segments.get(_segments.indexOf(_readSegment) + 1);
+			_readOffset = 0;
+		}
+		return false;
+	}
+
+	private void checkOpen() throws IOException {
+		if (_closed) {
+			throw new IOException("Spool " + _directory + " is closed.");
+		}
+	}
+
+	private Segment createSegment(int size) throws IOException {
+		Path path = _directory.resolve(String.format("%020d%s", _nextSequence++, SUFFIX));
+		Segment segment = new Segment(path, map(path, size), size);
+		_segments.add(segment);
+		_bytes += size;
+		_writeOffset = 0;
+		if (_readSegment == null) {
+			_readSegment = segment;
+			_readOffset = 0;
+			_acknowledgedSegment = segment;
+			_acknowledgedOffset = 0;
+		}
+		return segment;
+	}
+
+	private static MappedByteBuffer map(Path path, int size) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+			if (file.length() != size) {
+				file.setLength(size);
+			}
+			// the mapping stays valid after the channel is closed
+			return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		}
+	}
+
+	private void deleteSegment(Segment segment) {
+		_bytes -= segment.size;
+		segment.buffer = null;
+		_undeleted.add(segment.path);
+	}
+
+	private void retryDelete() {
+		for (int i = _undeleted.size() - 1; i >= 0; i--) {
+			try {
+				Files.deleteIfExists(_undeleted.get(i));
+				_undeleted.remove(i);
+			} catch (IOException e) {
+				logger.debug("Spool segment " + _undeleted.get(i) + " not deleted yet: " + e.getLocalizedMessage());
+			}
+		}
+	}
+
+	/**
+	 * Read the segment files of an earlier run: find the last published and the
+	 * last acknowledged frame, delete what is not needed any more.
+	 */
+	private void recover() throws IOException {
+		ArrayList<Path> paths = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(_directory, "*" + SUFFIX)) {
+			for (Path path : stream) {
+				paths.add(path);
+			}
+		}
+		Collections.sort(paths);
+		Segment acknowledged = null;
+		int acknowledgedOffset = 0;
+		for (Path path : paths) {
+			String name = path.getFileName().toString();
+			if (!name.matches("\\d{20}\\" + SUFFIX)) {
+				continue;
+			}
+			long sequence = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+			_nextSequence = Math.max(_nextSequence, sequence + 1);
+			long size = Files.size(path);
+			if (size < HEADER + 4 || size > Integer.MAX_VALUE) {
+				Files.delete(path);
+				continue;
+			}
+			Segment segment = new Segment(path, map(path, (int) size), (int) size);
+			_segments.add(segment);
+			_bytes += size;
+			MappedByteBuffer buffer = segment.buffer;
+			int offset = 0;
+			while (offset + HEADER <= size) {
+				int length = buffer.getInt(offset);
+				if (length <= 0 || (long) offset + HEADER + length > size) {
+					break;
+				}
+				byte[] payload = new byte[length];
+				buffer.get(offset + HEADER, payload);
+				CRC32C crc = new CRC32C();
+				crc.update(payload);
+				if ((int) crc.getValue() != buffer.getInt(offset + CRC)) {
+					logger.warn("Spool segment " + path + " is damaged at offset " + offset + ", the rest is skipped.");
+					break;
+				}
+				byte flags = buffer.get(offset + FLAGS);
+				offset += HEADER + length;
+				if ((flags & PUBLISHED) != 0) {
+					_publishedSegment = segment;
+					_publishedOffset = offset;
+				}
+				if ((flags & ACKNOWLEDGED) != 0) {
+					acknowledged = segment;
+					acknowledgedOffset = offset;
+				}
+			}
+			segment.end = offset;
+		}
+		if (_publishedSegment == null) {
+			while (!_segments.isEmpty()) {
+				deleteSegment(_segments.remove(0));
+			}
+			retryDelete();
+			return;
+		}
+		// frames that were not published belong to an unfinished batch
+		while (_segments.get(_segments.size() - 1) != _publishedSegment) {
+			deleteSegment(_segments.remove(_segments.size() - 1));
+		}
+		_publishedSegment.end = _publishedOffset;
+		_writeOffset = _publishedOffset;
+		if (_writeOffset + 4 <= _publishedSegment.size) {
+			_publishedSegment.buffer.putInt(_writeOffset, 0);
+		}
+		if (acknowledged == null) {
+			acknowledged = _segments.get(0);
+		}
+		while (_segments.get(0) != acknowledged) {
+			deleteSegment(_segments.remove(0));
+		}
+		retryDelete();
+		_readSegment = acknowledged;
+		_readOffset = acknowledgedOffset;
+		_acknowledgedSegment = acknowledged;
+		_acknowledgedOffset = acknowledgedOffset;
+		if (!isAcknowledged()) {
+			logger.info("Spool " + _directory + " has frames of an earlier run, they are delivered first.");
+		}
+	}
+
+	/**
+	 * A memory-mapped segment file.
+	 */
+	private static class Segment {
+		private final Path path;
+		private final int size;
+		private MappedByteBuffer buffer;
+		/**
+		 * End of the frames that can be read.
+		 */
+		private int end = 0;
+
+		private Segment(Path path, MappedByteBuffer buffer, int size) {
+			this.path = path;
+			this.buffer = buffer;
+			this.size = size;
+		}
+	}
+}
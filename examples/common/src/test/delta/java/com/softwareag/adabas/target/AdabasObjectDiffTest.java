@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2021-2024 Software AG, Darmstadt, Germany and/or Software AG USA
+ * Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates
+ * and/or their licensors.
+ * Use, reproduction, transfer, publication or disclosure is prohibited except
+ * as specifically provided for in your License Agreement with Software AG.
+ *
+ */
+package com.softwareag.adabas.target;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
+
+public class AdabasObjectDiffTest {
+
+	@Test
+	public void changedFields() throws Exception {
+		AdabasObject before = record("Mustermann", "1234.50", "GER", "ENG");
+		AdabasObject after = record("Mustermann", "1234.5", "GER", "FRE");
+		after.putValue("NAME", null);
+		before.removeField("CITY");
+		after.putValue("CITY", "Darmstadt");
+
+		AdabasObject delta = AdabasObjectDiff.diff(before, after, Collections.singletonList("PERSONNEL_ID"));
+		assertEquals("{\"ISN\":42,\"PERSONNEL_ID\":\"50005800\",\"NAME\":null,\"LANG\":[\"GER\",\"FRE\"],"
+				+ "\"CITY\":\"Darmstadt\"}", json(delta));
+	}
+
+	@Test
+	public void removedField() throws Exception {
+		AdabasObject before = record("Mustermann", "1", "GER");
+		AdabasObject after = record("Mustermann", "1", "GER");
+		after.removeField("CITY");
+
+		assertEquals("{\"ISN\":42,\"CITY\":null}", json(AdabasObjectDiff.diff(before, after, null)));
+	}
+
+	@Test
+	public void periodicGroup() throws Exception {
+		AdabasObject before = AdabasObject.newObject();
+		before.putValue("ISN", 7l);
+		before.putValue("INCOME", new ArrayList<>(Arrays.asList(income("USD", 100), income("EUR", 200))));
+		AdabasObject after = AdabasObject.newObject();
+		after.putValue("ISN", 7l);
+		after.putValue("INCOME",
+				new ArrayList<>(Arrays.asList(income("USD", 100), income("EUR", 300), income("CHF", 10))));
+
+		assertEquals("{\"ISN\":7,\"INCOME\":[{},{\"BONUS\":[300]},{\"CURRCODE\":\"CHF\",\"BONUS\":[10]}]}",
+				json(AdabasObjectDiff.diff(before, after, null)));
+		assertEquals("{\"ISN\":7,\"INCOME\":[{},{\"BONUS\":[200]},null]}",
+				json(AdabasObjectDiff.diff(after, before, null)));
+	}
+
+	@Test
+	public void unchanged() throws Exception {
+		AdabasObject before = record("Mustermann", "1.0", "GER");
+		before.putValue("PHOTO", new byte[] { 1, 2, 3 });
+		AdabasObject after = record("Mustermann", "1.00", "GER");
+		after.putValue("PHOTO", new byte[] { 1, 2, 3 });
+
+		assertEquals("{\"ISN\":42}", json(AdabasObjectDiff.diff(before, after, null)));
+	}
+
+	/**
+	 * The fields in the order they were added, as JSON without escapes.
+	 */
+	private static String json(Object value) {
+		if (value instanceof AdabasObject) {
+			AdabasObject ao = (AdabasObject) value;
+			StringBuilder sb = new StringBuilder("{");
+			for (String key : ao.getKeyList()) {
+				if (sb.length() > 1) {
+					sb.append(',');
+				}
+				sb.append('"').append(key).append("\":").append(json(ao.evaluateValue(key)));
+			}
+			return sb.append('}').toString();
+		} else if (value instanceof List<?>) {
+			StringBuilder sb = new StringBuilder("[");
+			for (Object element : (List<?>) value) {
+				if (sb.length() > 1) {
+					sb.append(',');
+				}
+				sb.append(json(element));
+			}
+			return sb.append(']').toString();
+		} else if (value == null || value instanceof Number) {
+			return String.valueOf(value);
+		}
+		return "\"" + value + "\"";
+	}
+
+	private static AdabasObject record(String name, String salary, String... lang) {
+		AdabasObject ao = AdabasObject.newObject();
+		ao.putValue("ISN", 42l);
+		ao.putValue("PERSONNEL_ID", "50005800");
+		ao.putValue("NAME", name);
+		ao.putValue("SALARY", new BigDecimal(salary));
+		ao.putValue("LANG", new ArrayList<>(Arrays.asList(lang)));
+		ao.putValue("CITY", "Berlin");
+		return ao;
+	}
+
+	private static AdabasObject income(String currency, int bonus) {
+		AdabasObject pe = AdabasObject.newObject();
+		pe.putValue("CURRCODE", currency);
+		pe.putValue("BONUS", new ArrayList<>(Arrays.asList(bonus)));
+		return pe;
+	}
+}
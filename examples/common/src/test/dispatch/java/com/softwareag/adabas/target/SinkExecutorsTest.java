@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2021-2024 Software AG, Darmstadt, Germany and/or Software AG USA
+ * Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates
+ * and/or their licensors.
+ * Use, reproduction, transfer, publication or disclosure is prohibited except
+ * as specifically provided for in your License Agreement with Software AG.
+ *
+ */
+package com.softwareag.adabas.target;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * The virtual thread tests are skipped before Java 21, the testJava21 task of
+ * the examples runs them.
+ */
+public class SinkExecutorsTest {
+
+	@Test
+	public void platformThreads() throws Exception {
+		ExecutorService executor = SinkExecutors.newExecutor("test-", 2, false);
+		try {
+			Thread thread = executor.submit(() -> Thread.currentThread()).get(5, TimeUnit.SECONDS);
+			assertTrue(thread.getName(), thread.getName().startsWith("test-"));
+			assertTrue(thread.isDaemon());
+			assertFalse(isVirtual(thread));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void boundedExecutorLimitsConcurrency() throws Exception {
+		assertEquals(2, maxConcurrency(new SinkExecutors.BoundedExecutor(Executors.newCachedThreadPool(), 2)));
+	}
+
+	@Test
+	public void interruptedWaitCompletesTask() throws Exception {
+		assertInterruptedWaitCompletesTask(new SinkExecutors.BoundedExecutor(Executors.newCachedThreadPool(), 1));
+	}
+
+	@Test
+	public void virtualThreads() throws Exception {
+		assumeTrue(SinkExecutors.isVirtualThreadsSupported());
+		ExecutorService executor = SinkExecutors.newExecutor("test-", 2, true);
+		try {
+			Thread thread = executor.submit(() -> Thread.currentThread()).get(5, TimeUnit.SECONDS);
+			assertTrue(thread.getName(), thread.getName().startsWith("test-"));
+			assertTrue(isVirtual(thread));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void virtualThreadsLimitConcurrency() throws Exception {
+		assumeTrue(SinkExecutors.isVirtualThreadsSupported());
+		assertEquals(2, maxConcurrency(SinkExecutors.newExecutor("test-", 2, true)));
+	}
+
+	@Test
+	public void virtualThreadsInterruptedWaitCompletesTask() throws Exception {
+		assumeTrue(SinkExecutors.isVirtualThreadsSupported());
+		assertInterruptedWaitCompletesTask(SinkExecutors.newExecutor("test-", 1, true));
+	}
+
+	/**
+	 * @return the largest number of tasks that ran at the same time
+	 */
+	private static int maxConcurrency(ExecutorService executor) throws Exception {
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger max = new AtomicInteger();
+		ArrayList<Future<?>> futures = new ArrayList<>();
+		try {
+			for (int i = 0; i < 8; i++) {
+				futures.add(executor.submit((Callable<Void>) () -> {
+					max.accumulateAndGet(running.incrementAndGet(), Math::max);
+					Thread.sleep(50);
+					running.decrementAndGet();
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get(5, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdown();
+		}
+		return max.get();
+	}
+
+	/**
+	 * A task waiting for its permit when the executor is shut down runs with the
+	 * interrupt flag set, its future completes.
+	 */
+	private static void assertInterruptedWaitCompletesTask(ExecutorService executor) throws Exception {
+		CountDownLatch running = new CountDownLatch(1);
+		CountDownLatch blocked = new CountDownLatch(1);
+		executor.submit(() -> {
+			running.countDown();
+			// keeps the permit until the waiting task is done
+			while (true) {
+				try {
+					blocked.await();
+					return null;
+				} catch (InterruptedException e) {
+					// shutdownNow interrupts this task as well
+				}
+			}
+		});
+		running.await();
+		// waits for the permit held by the first task
+		Future<?> waiting = executor.submit(() -> Thread.currentThread().isInterrupted());
+		Thread.sleep(100);
+		executor.shutdownNow();
+		try {
+			assertTrue((Boolean) waiting.get(5, TimeUnit.SECONDS));
+		} finally {
+			blocked.countDown();
+		}
+	}
+
+	private static boolean isVirtual(Thread thread) throws Exception {
+		if (!SinkExecutors.isVirtualThreadsSupported()) {
+			return false;
+		}
+		return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2021-2024 Software AG, Darmstadt, Germany and/or Software AG USA
+ * Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates
+ * and/or their licensors.
+ * Use, reproduction, transfer, publication or disclosure is prohibited except
+ * as specifically provided for in your License Agreement with Software AG.
+ *
+ */
+package com.softwareag.adabas.target;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+
+import org.junit.Test;
+
+import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
+import com.softwareag.adabas.targetadapter.sdk.AdabasObjectData;
+
+public class TransactionCoalescerTest {
+
+	private final TransactionCoalescer _coalescer = new TransactionCoalescer();
+	private final ArrayList<String> _operations = new ArrayList<>();
+	private final ArrayList<AdabasObjectData> _data = new ArrayList<>();
+
+	@Test
+	public void insertUpdateDelete() throws Exception {
+		AdabasObject v1 = record(1, "A");
+		AdabasObject v2 = record(1, "B");
+		AdabasObject v3 = record(1, "C");
+		_coalescer.add("Insert", data("EMPL", v1, null));
+		_coalescer.add("Update", data("EMPL", v2, v1));
+		_coalescer.add("Update", data("EMPL", v3, v2));
+		_coalescer.add("Insert", data("EMPL", record(2, "X"), null));
+		_coalescer.add("Delete", data("EMPL", null, record(2, "X")));
+
+		assertEquals(4, drain());
+		assertEquals(1, _operations.size());
+		assertEquals("Insert", _operations.get(0));
+		assertSame(v3, _data.get(0).getAdabasObject());
+		assertNull(_data.get(0).getBeforeObject());
+		assertTrue(_coalescer.isEmpty());
+	}
+
+	@Test
+	public void updates() throws Exception {
+		AdabasObject v1 = record(1, "A");
+		AdabasObject v2 = record(1, "B");
+		AdabasObject v3 = record(1, "C");
+		AdabasObject other = record(1, "other file");
+		_coalescer.add("Update", data("EMPL", v2, v1));
+		_coalescer.add("Insert", data("VEHICLES", other, null));
+		_coalescer.add("Update", data("EMPL", v3, v2));
+		_coalescer.add("Delete", data("EMPL", null, record(2, "X")));
+
+		assertEquals(1, drain());
+		assertEquals("[Update, Insert, Delete]", _operations.toString());
+		assertSame(v3, _data.get(0).getAdabasObject());
+		assertSame(v1, _data.get(0).getBeforeObject());
+		assertEquals("EMPL", _data.get(0).getFileName());
+		assertSame(other, _data.get(1).getAdabasObject());
+	}
+
+	@Test
+	public void deleteAndInsert() throws Exception {
+		AdabasObject v1 = record(1, "A");
+		AdabasObject v2 = record(1, "B");
+		AdabasObject v3 = record(1, "C");
+		_coalescer.add("Update", data("EMPL", v2, v1));
+		_coalescer.add("Delete", data("EMPL", null, v2));
+		_coalescer.add("Delete", data("EMPL", null, record(2, "X")));
+		_coalescer.add("Insert", data("EMPL", v3, null));
+
+		assertEquals(2, drain());
+		assertEquals("[Update, Delete]", _operations.toString());
+		assertSame(v3, _data.get(0).getAdabasObject());
+		assertSame(v1, _data.get(0).getBeforeObject());
+	}
+
+	@Test
+	public void withoutIsn() throws Exception {
+		AdabasObject ao = AdabasObject.newObject();
+		ao.putValue("NAME", "A");
+		_coalescer.add("Insert", data("EMPL", ao, null));
+		_coalescer.add("Insert", data("EMPL", ao, null));
+
+		assertEquals(0, drain());
+		assertEquals(2, _operations.size());
+	}
+
+	private int drain() throws Exception {
+		return _coalescer.drain((operation, data) -> {
+			_operations.add(operation);
+			_data.add(data);
+		});
+	}
+
+	private static AdabasObjectData data(String file, AdabasObject after, AdabasObject before) {
+		return new AdabasObjectData("4711", file, "SUB1", 12, 11, new Date(), after, before);
+	}
+
+	private static AdabasObject record(long isn, String name) {
+		AdabasObject ao = AdabasObject.newObject();
+		ao.putValue("ISN", isn);
+		ao.putValue("NAME", name);
+		return ao;
+	}
+}
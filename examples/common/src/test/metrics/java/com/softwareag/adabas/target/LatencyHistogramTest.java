@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2021-2024 Software AG, Darmstadt, Germany and/or Software AG USA
+ * Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates
+ * and/or their licensors.
+ * Use, reproduction, transfer, publication or disclosure is prohibited except
+ * as specifically provided for in your License Agreement with Software AG.
+ *
+ */
+package com.softwareag.adabas.target;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void keepsSmallValuesExactly() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 64; i++) {
+			histogram.record(i);
+		}
+		assertEquals(0, histogram.getPercentile(0));
+		assertEquals(31, histogram.getPercentile(50));
+		assertEquals(63, histogram.getPercentile(100));
+	}
+
+	@Test
+	public void keepsValuesWithinRelativeError() {
+		for (long value : new long[] { 100, 1_234, 56_789, 1_000_000, 123_456_789, 98_765_432_109L }) {
+			LatencyHistogram histogram = new LatencyHistogram();
+			histogram.record(value);
+			histogram.record(2 * value);
+			assertWithinError(value, histogram.getPercentile(50));
+		}
+	}
+
+	@Test
+	public void findsPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1000; i >= 1; i--) {
+			histogram.record(i * 1000L);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(500_500_000L, histogram.getSum());
+		assertEquals(1_000_000L, histogram.getMax());
+		assertWithinError(500_000, histogram.getPercentile(50));
+		assertWithinError(900_000, histogram.getPercentile(90));
+		assertWithinError(990_000, histogram.getPercentile(99));
+		assertWithinError(999_000, histogram.getPercentile(99.9));
+		assertEquals(1_000_000L, histogram.getPercentile(100));
+	}
+
+	@Test
+	public void clampsOutOfRangeValues() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentile(99));
+		histogram.record(-5);
+		assertEquals(0, histogram.getPercentile(50));
+		histogram.record(Long.MAX_VALUE);
+		assertEquals((1L << 40) - 1, histogram.getMax());
+		assertWithinError((1L << 40) - 1, histogram.getPercentile(100));
+	}
+
+	private static void assertWithinError(long expected, long actual) {
+		assertTrue("expected about " + expected + " but was " + actual,
+				Math.abs(actual - expected) <= expected / 32);
+	}
+}
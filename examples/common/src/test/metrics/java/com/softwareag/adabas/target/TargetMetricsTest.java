@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2021-2024 Software AG, Darmstadt, Germany and/or Software AG USA
+ * Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates
+ * and/or their licensors.
+ * Use, reproduction, transfer, publication or disclosure is prohibited except
+ * as specifically provided for in your License Agreement with Software AG.
+ *
+ */
+package com.softwareag.adabas.target;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class TargetMetricsTest {
+
+	@Test
+	public void writesPrometheusText() {
+		TargetMetrics metrics = new TargetMetrics();
+		metrics.counter("adabas_target_operations_total", "Operations.", "operation", "Insert").add(2);
+		metrics.counter("adabas_target_operations_total", "Operations.", "operation", "Update").increment();
+		metrics.gauge("adabas_target_queue", "Queue.", () -> 7);
+		// 2^21 is the lower bound of its bucket, the quantiles are capped by the maximum
+		metrics.histogram("adabas_target_commit_seconds", "Commit latency.").record(1L << 21);
+
+		assertEquals("# HELP adabas_target_commit_seconds Commit latency.\n"
+				+ "# TYPE adabas_target_commit_seconds summary\n"
+				+ "adabas_target_commit_seconds{quantile=\"0.5\"} 0.002097152\n"
+				+ "adabas_target_commit_seconds{quantile=\"0.9\"} 0.002097152\n"
+				+ "adabas_target_commit_seconds{quantile=\"0.99\"} 0.002097152\n"
+				+ "adabas_target_commit_seconds{quantile=\"0.999\"} 0.002097152\n"
+				+ "adabas_target_commit_seconds_sum 0.002097152\n"
+				+ "adabas_target_commit_seconds_count 1\n"
+				+ "# HELP adabas_target_operations_total Operations.\n"
+				+ "# TYPE adabas_target_operations_total counter\n"
+				+ "adabas_target_operations_total{operation=\"Insert\"} 2\n"
+				+ "adabas_target_operations_total{operation=\"Update\"} 1\n"
+				+ "# HELP adabas_target_queue Queue.\n"
+				+ "# TYPE adabas_target_queue gauge\n"
+				+ "adabas_target_queue 7\n", metrics.toPrometheus());
+	}
+
+	@Test
+	public void writesSummaryLabelsBeforeQuantile() {
+		TargetMetrics metrics = new TargetMetrics();
+		metrics.histogram("adabas_target_transform_seconds", "Transform.", "operation", "Insert").record(1L << 21);
+
+		String text = metrics.toPrometheus();
+		assertEquals(
+				"adabas_target_transform_seconds{operation=\"Insert\",quantile=\"0.5\"} 0.002097152\n"
+						+ "adabas_target_transform_seconds_sum{operation=\"Insert\"} 0.002097152\n"
+						+ "adabas_target_transform_seconds_count{operation=\"Insert\"} 1\n",
+				text.replaceAll("(?m)^(#.*|.*quantile=\"0\\.9+\".*)\n", ""));
+	}
+
+	@Test
+	public void escapesLabelValues() {
+		TargetMetrics metrics = new TargetMetrics();
+		metrics.counter("adabas_target_files_total", "Files.", "file", "a\"b\\c\nd").increment();
+
+		assertEquals("adabas_target_files_total{file=\"a\\\"b\\\\c\\nd\"} 1\n",
+				metrics.toPrometheus().replaceAll("(?m)^#.*\n", ""));
+	}
+
+	@Test
+	public void returnsSameCounterForSameLabels() {
+		TargetMetrics metrics = new TargetMetrics();
+		assertSame(metrics.counter("adabas_target_operations_total", "Operations.", "operation", "Insert"),
+				metrics.counter("adabas_target_operations_total", "Operations.", "operation", "Insert"));
+	}
+}
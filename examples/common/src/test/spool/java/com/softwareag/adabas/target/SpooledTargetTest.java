@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2021-2024 Software AG, Darmstadt, Germany and/or Software AG USA
+ * Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates
+ * and/or their licensors.
+ * Use, reproduction, transfer, publication or disclosure is prohibited except
+ * as specifically provided for in your License Agreement with Software AG.
+ *
+ */
+package com.softwareag.adabas.target;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
+import com.softwareag.adabas.targetadapter.sdk.AdabasObjectData;
+import com.softwareag.adabas.targetadapter.sdk.IUserTarget;
+
+public class SpooledTargetTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final RecordingTarget _delegate = new RecordingTarget();
+	private final SpooledTarget _target = new SpooledTarget(_delegate);
+
+	@After
+	public void close() throws Exception {
+		_target.close();
+	}
+
+	@Test
+	public void redeliversWithoutDuplicates() throws Exception {
+		_delegate.failedCommits = 1;
+		_target.setParameter("test", parameter(0));
+		_target.insert(data("1", 1));
+		_target.insert(data("1", 2));
+		_target.commit("1");
+
+		awaitCommitted(1);
+		assertEquals("[1:[Insert 1, Insert 2]]", _delegate.committed.toString());
+	}
+
+	@Test
+	public void parksPoisonTransaction() throws Exception {
+		_delegate.poisonIsn = 2;
+		_target.setParameter("test", parameter(2));
+		for (int t = 1; t <= 3; t++) {
+			_target.insert(data(Integer.toString(t), t));
+			_target.commit(Integer.toString(t));
+		}
+
+		awaitCommitted(2);
+		assertEquals("[1:[Insert 1], 3:[Insert 3]]", _delegate.committed.toString());
+		assertEquals(1, new File(folder.getRoot(), "parked").list().length);
+	}
+
+	private HashMap<String, String> parameter(int maxAttempts) {
+		HashMap<String, String> parameter = new HashMap<>();
+		parameter.put(SpooledTarget.SPOOL_DIRECTORY, folder.getRoot().getPath());
+		parameter.put(SpooledTarget.SPOOL_SYNC, "false");
+		parameter.put(SpooledTarget.SPOOL_MAX_ATTEMPTS, Integer.toString(maxAttempts));
+		return parameter;
+	}
+
+	private void awaitCommitted(int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (_delegate.committed.size() < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+	}
+
+	private static AdabasObjectData data(String transactionId, long isn) {
+		AdabasObject ao = AdabasObject.newObject();
+		ao.putValue("ISN", isn);
+		return new AdabasObjectData(transactionId, "EMPL", "SUBS", 12, 11, new Date(0), ao, null);
+	}
+
+	/**
+	 * Keeps the operations until commit, fails commits or the transformation of
+	 * a poison record on request.
+	 */
+	private static class RecordingTarget extends ParallelDispatchTarget<String> {
+		private final ArrayList<String> _transaction = new ArrayList<>();
+		private final List<String> committed = Collections.synchronizedList(new ArrayList<>());
+		private volatile int failedCommits = 0;
+		private volatile long poisonIsn = -1;
+
+		@Override
+		public IUserTarget setParameter(String targetName, HashMap<String, String> parameter) throws Exception {
+			setDispatchParameter(parameter);
+			return this;
+		}
+
+		@Override
+		public boolean isServiceOkay() {
+			return true;
+		}
+
+		@Override
+		protected String transform(String operation, AdabasObjectData data) throws Exception {
+			Object isn = data.getAdabasObject().evaluateValue("ISN");
+			if (((Number) isn).longValue() == poisonIsn) {
+				throw new Exception("Poison record " + isn);
+			}
+			return operation + " " + isn;
+		}
+
+		@Override
+		protected void emit(String operation, AdabasObjectData data, String result) {
+			_transaction.add(result);
+		}
+
+		@Override
+		protected boolean commitTransaction(String transactionId) {
+			if (failedCommits > 0) {
+				failedCommits--;
+				return false;
+			}
+			committed.add(transactionId + ":" + _transaction);
+			_transaction.clear();
+			return true;
+		}
+
+		@Override
+		protected void discardTransaction() {
+			_transaction.clear();
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2021-2024 Software AG, Darmstadt, Germany and/or Software AG USA
+ * Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates
+ * and/or their licensors.
+ * Use, reproduction, transfer, publication or disclosure is prohibited except
+ * as specifically provided for in your License Agreement with Software AG.
+ *
+ */
+package com.softwareag.adabas.target;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WriteAheadSpoolTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void readsPublishedFramesOnly() throws Exception {
+		try (WriteAheadSpool spool = new WriteAheadSpool(folder.getRoot().toPath(), 1024, 1 << 20, false)) {
+			spool.mark();
+			spool.append(bytes("a"));
+			assertNull(spool.next(0));
+			spool.append(bytes("b"));
+			spool.publish();
+			assertEquals("a", text(spool.next(0)));
+			assertEquals("b", text(spool.next(0)));
+			assertNull(spool.next(0));
+			spool.rewind();
+			assertEquals("a", text(spool.next(0)));
+		}
+	}
+
+	@Test
+	public void recoversAfterLastAcknowledgedFrame() throws Exception {
+		WriteAheadSpool spool = new WriteAheadSpool(folder.getRoot().toPath(), 64, 1 << 20, false);
+		for (int t = 0; t < 4; t++) {
+			spool.append(bytes("t" + t + "a"));
+			spool.append(bytes("t" + t + "b"));
+			spool.publish();
+		}
+		spool.append(bytes("unfinished"));
+		spool.mark();
+		spool.next(0);
+		spool.next(0);
+		spool.next(0);
+		spool.next(0);
+		spool.acknowledge();
+		assertFalse(spool.isAcknowledged());
+		// no close, like a crash of the process
+
+		try (WriteAheadSpool recovered = new WriteAheadSpool(folder.getRoot().toPath(), 64, 1 << 20, false)) {
+			recovered.mark();
+			StringBuilder frames = new StringBuilder();
+			byte[] frame;
+			while ((frame = recovered.next(0)) != null) {
+				frames.append(text(frame)).append(' ');
+			}
+			assertEquals("t2a t2b t3a t3b ", frames.toString());
+			recovered.acknowledge();
+			assertTrue(recovered.isAcknowledged());
+			recovered.append(bytes("next"));
+			recovered.publish();
+			recovered.mark();
+			assertEquals("next", text(recovered.next(0)));
+		}
+	}
+
+	@Test
+	public void deletesAcknowledgedSegments() throws Exception {
+		File root = folder.getRoot();
+		try (WriteAheadSpool spool = new WriteAheadSpool(root.toPath(), 32, 1 << 20, false)) {
+			for (int i = 0; i < 10; i++) {
+				spool.append(new byte[16]);
+				spool.publish();
+			}
+			assertEquals(10, spool.getSegmentCount());
+			spool.mark();
+			while (spool.next(0) != null) {
+				spool.acknowledge();
+			}
+			assertEquals(1, spool.getSegmentCount());
+			assertEquals(1, root.list().length);
+		}
+	}
+
+	private static byte[] bytes(String text) {
+		return text.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String text(byte[] bytes) {
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.softwareag.adabas.targetadapter.sdk.AdabasObjectData;
+
+/**
+ * Formatting of the text that Console Dump logs per operation, without the
+ * appender.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ConsoleDumpBenchmark {
+
+	@Param({ "FLAT", "WIDE", "DEEP" })
+	public SyntheticRecords.Shape shape;
+
+	private AdabasObjectData _data;
+
+	@Setup
+	public void setup() {
+		_data = SyntheticRecords.data(shape, 4711);
+		_data.setBeforeObject(SyntheticRecords.record(shape, 4711));
+	}
+
+	@Benchmark
+	public String insert() {
+		return ConsoleDump.format("Insert", _data, false);
+	}
+
+	@Benchmark
+	public String update() {
+		return ConsoleDump.format("Update", _data, true);
+	}
+}
@@ -15,65 +15,325 @@
  */
 package com.softwareag.adabas.target;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import com.softwareag.adabas.targetadapter.sdk.AbstractTarget;
+import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
 import com.softwareag.adabas.targetadapter.sdk.AdabasObjectData;
+import com.softwareag.adabas.targetadapter.sdk.IUserTarget;
 
-public class ConsoleDump extends AbstractTarget {
+/**
+ * Logs every operation. The text of the Adabas objects is formatted by the
+ * dispatch threads, the log calls are made in the order of the operations.
+ * <p>
+ * For diagnostics under load the operations can be sampled per Adabas file and
+ * logged in a compact one-line format. With asynchronous output the lines are
+ * put into a bounded buffer and logged by a thread of their own; when the
+ * buffer is full, lines are dropped and counted instead of slowing down the
+ * replication.
+ */
+public class ConsoleDump extends ParallelDispatchTarget<String> {
 
 	private static final Logger logger = LogManager.getLogger(ConsoleDump.class);
 
+	private static final String OUTPUT_FORMAT = "outputFormat";
+	private static final String ASYNC_OUTPUT = "asyncOutput";
+	private static final String BUFFER_SIZE = "bufferSize";
+	private static final String SAMPLE_EVERY = "sampleEvery";
+	private static final String SAMPLE_RATE = "sampleRate";
+	private static final String DELTA_UPDATES = "deltaUpdates";
+
+	private static final String FULL = "FULL";
+	private static final String COMPACT = "COMPACT";
+
+	private static final int DEFAULT_BUFFER_SIZE = 8192;
+	private static final List<String> DELTA_KEY = Collections.singletonList("ISN");
+	/**
+	 * Minimum interval of the messages about dropped lines in milliseconds.
+	 */
+	private static final long DROP_REPORT_INTERVAL = 1000;
+
+	private boolean _compact = false;
+	/**
+	 * Log only the ISN and the changed fields of an update.
+	 */
+	private boolean _deltaUpdates = false;
+	/**
+	 * Log every Nth operation per Adabas file.
+	 */
+	private long _sampleEvery = 1;
+	/**
+	 * Log at most this number of operations per second and Adabas file, 0
+	 * without limit.
+	 */
+	private long _sampleRate = 0;
+	/**
+	 * Sampling state per Adabas file, used by the thread of the Target Adapter
+	 * only.
+	 */
+	private final HashMap<String, Sampler> _samplers = new HashMap<>();
+
+	/**
+	 * Lines not logged yet, null with synchronous output.
+	 */
+	private ArrayBlockingQueue<String> _buffer = null;
+	private Thread _writer = null;
+	private volatile boolean _closed = false;
+	private final LongAdder _dropped = new LongAdder();
+	private final LongAdder _sampledOut = new LongAdder();
+
 	@Override
-	public void create(AdabasObjectData data) throws Exception {
-		printConsole("Create", data);
+	public IUserTarget setParameter(String targetName, HashMap<String, String> parameter) throws Exception {
+		if (parameter.containsKey(OUTPUT_FORMAT) && !parameter.get(OUTPUT_FORMAT).isEmpty()) {
+			String format = parameter.get(OUTPUT_FORMAT).toUpperCase();
+			if (!format.equals(FULL) && !format.equals(COMPACT)) {
+				throw new Exception("Unknown output format " + parameter.get(OUTPUT_FORMAT) + ".");
+			}
+			_compact = format.equals(COMPACT);
+		}
+		if (parameter.containsKey(DELTA_UPDATES)) {
+			_deltaUpdates = Boolean.parseBoolean(parameter.get(DELTA_UPDATES));
+		}
+		_sampleEvery = getNumber(parameter, SAMPLE_EVERY, 1);
+		if (_sampleEvery <= 0) {
+			throw new Exception("Sample every must be greater than 0.");
+		}
+		_sampleRate = getNumber(parameter, SAMPLE_RATE, 0);
+		if (_sampleRate < 0) {
+			throw new Exception("Sample rate must not be negative.");
+		}
+		if (parameter.containsKey(ASYNC_OUTPUT) && Boolean.parseBoolean(parameter.get(ASYNC_OUTPUT))) {
+			long bufferSize = getNumber(parameter, BUFFER_SIZE, DEFAULT_BUFFER_SIZE);
+			if (bufferSize <= 0 || bufferSize > Integer.MAX_VALUE) {
+				throw new Exception("Buffer size must be between 1 and " + Integer.MAX_VALUE + ".");
+			}
+			_buffer = new ArrayBlockingQueue<>((int) bufferSize);
+			_writer = new Thread(this::writeBuffer, "ConsoleDump-writer");
+			_writer.setDaemon(true);
+			_writer.start();
+		}
+		setDispatchParameter(parameter);
+		return this;
 	}
 
 	@Override
-	public void delete(AdabasObjectData data) throws Exception {
-		printConsole("Delete", data);
+	public Object[][] getMetadata() {
+		return withDispatchMetadata(new Object[][] {
+				{ OUTPUT_FORMAT, "Output Format", ParameterType.Combo, new String[] { FULL, COMPACT } },
+				{ ASYNC_OUTPUT, "Asynchronous Output", ParameterType.Boolean },
+				{ BUFFER_SIZE, "Buffer Size", ParameterType.Integer },
+				{ SAMPLE_EVERY, "Sample Every Nth Operation", ParameterType.Integer },
+				{ SAMPLE_RATE, "Sample Rate (per second)", ParameterType.Integer },
+				{ DELTA_UPDATES, "Delta Updates", ParameterType.Boolean } });
 	}
 
 	@Override
-	public void insert(AdabasObjectData data) throws Exception {
-		printConsole("Insert", data);
+	public void setMetrics(TargetMetrics metrics) {
+		super.setMetrics(metrics);
+		metrics.gauge("adabas_target_console_dropped_lines", "Lines dropped because the output buffer was full.",
+				_dropped::sum);
+		metrics.gauge("adabas_target_console_sampled_out", "Operations not logged because of the sampling.",
+				_sampledOut::sum);
+		metrics.gauge("adabas_target_console_buffered_lines", "Lines in the output buffer.", () -> {
+			ArrayBlockingQueue<String> buffer = _buffer;
+			return buffer == null ? 0 : buffer.size();
+		});
 	}
 
 	@Override
 	public void populate(AdabasObjectData data) throws Exception {
-		printConsole("Populate", data);
+		if (sample(data)) {
+			super.populate(data);
+		}
+	}
+
+	@Override
+	public void insert(AdabasObjectData data) throws Exception {
+		if (sample(data)) {
+			super.insert(data);
+		}
 	}
 
 	@Override
 	public void update(AdabasObjectData data) throws Exception {
-		printConsole("Update", data, true);
+		if (sample(data)) {
+			super.update(data);
+		}
+	}
+
+	@Override
+	public void delete(AdabasObjectData data) throws Exception {
+		if (sample(data)) {
+			super.delete(data);
+		}
+	}
+
+	@Override
+	protected String transform(String operation, AdabasObjectData data) throws Exception {
+		AdabasObject delta = null;
+		if (_deltaUpdates && operation.equals("Update") && data.getBeforeObject() != null) {
+			delta = AdabasObjectDiff.diff(data.getBeforeObject(), data.getAdabasObject(), DELTA_KEY);
+		}
+		if (_compact) {
+			return formatCompact(operation, data, delta);
+		}
+		if (delta != null) {
+			return formatDelta(operation, data, delta);
+		}
+		return format(operation, data, operation.equals("Update"));
+	}
+
+	@Override
+	protected void emit(String operation, AdabasObjectData data, String text) throws Exception {
+		output(text);
 	}
 
 	@Override
-	public boolean commit(String transactionId) throws Exception {
-		logger.info("Commit " + transactionId);
+	protected boolean commitTransaction(String transactionId) throws Exception {
+		output("Commit " + transactionId);
 		return true;
 	}
 
 	@Override
 	public void command(String operation, int dbid, int fnr, String state, String subscription, String fileName,
 			String value) throws Exception {
-		logger.info("Operation: {}, DBID: {}, FNR: {}, state: {}, subscription: {}, fileName: {}, value: {}", operation,
-				dbid, fnr, state, subscription, fileName, value);
+		awaitDispatched();
+		output("Operation: " + operation + ", DBID: " + dbid + ", FNR: " + fnr + ", state: " + state
+				+ ", subscription: " + subscription + ", fileName: " + fileName + ", value: " + value);
 	}
 
-	private void printConsole(String operation, AdabasObjectData data) throws Exception {
-		printConsole(operation, data, false);
+	@Override
+	public void close() throws Exception {
+		try {
+			super.close();
+		} finally {
+			if (_writer != null) {
+				// the writer logs the remaining lines before it ends
+				_closed = true;
+				_writer.join();
+			}
+		}
 	}
 
-	private void printConsole(String operation, AdabasObjectData data, boolean beforeObject) throws Exception {
+	static String format(String operation, AdabasObjectData data, boolean beforeObject) {
 		if (beforeObject) {
-			logger.info("{} - {}:\n{}Before Object\n{}", operation, data, data.getAdabasObject(),
-					data.getBeforeObject());
-		} else {
-			logger.info("{} - {}:\n{}", operation, data, data.getAdabasObject());
+			return operation + " - " + data + ":\n" + data.getAdabasObject() + "Before Object\n"
+					+ data.getBeforeObject();
 		}
+		return operation + " - " + data + ":\n" + data.getAdabasObject();
 	}
 
+	/**
+	 * @param delta the ISN and the changed fields of an update
+	 */
+	static String formatDelta(String operation, AdabasObjectData data, AdabasObject delta) {
+		return operation + " (changed fields) - " + data + ":\n" + delta;
+	}
+
+	/**
+	 * @param delta the ISN and the changed fields of an update, null to count
+	 *              the fields of the after image
+	 * @return operation, database and file number, ISN and number of fields on
+	 *         one line
+	 */
+	static String formatCompact(String operation, AdabasObjectData data, AdabasObject delta) {
+		AdabasObject ao = data.getAdabasObject() != null ? data.getAdabasObject() : data.getBeforeObject();
+		Object isn = ao == null ? null : ao.evaluateValue("ISN");
+		AdabasObject counted = delta != null ? delta : data.getAdabasObject();
+		int fields = counted == null ? 0 : counted.getKeys().size();
+		return operation + " DBID=" + data.getDatabaseNumber() + " FNR=" + data.getFileNumber() + " ISN="
+				+ (isn == null ? "-" : isn) + " fields=" + fields;
+	}
+
+	/**
+	 * @return true if the operation is logged, creates are always logged
+	 */
+	private boolean sample(AdabasObjectData data) {
+		if (_sampleEvery == 1 && _sampleRate == 0) {
+			return true;
+		}
+		Sampler sampler = _samplers.computeIfAbsent(data.getFileName(), f -> new Sampler());
+		if (sampler.sample(_sampleEvery, _sampleRate, System.currentTimeMillis())) {
+			return true;
+		}
+		_sampledOut.increment();
+		return false;
+	}
+
+	void output(String text) {
+		if (_buffer == null) {
+			logger.info(text);
+		} else if (!_buffer.offer(text)) {
+			_dropped.increment();
+		}
+	}
+
+	/**
+	 * Log the buffered lines until the target is closed, runs on the writer
+	 * thread.
+	 */
+	private void writeBuffer() {
+		long reported = 0;
+		long lastReport = 0;
+		try {
+			while (!_closed || !_buffer.isEmpty()) {
+				String text = _buffer.poll(DROP_REPORT_INTERVAL, TimeUnit.MILLISECONDS);
+				if (text != null) {
+					logger.info(text);
+				}
+				long dropped = _dropped.sum();
+				long now = System.currentTimeMillis();
+				if (dropped > reported && now - lastReport >= DROP_REPORT_INTERVAL) {
+					logger.warn((dropped - reported) + " lines dropped, the output buffer is full (" + dropped
+							+ " in total).");
+					reported = dropped;
+					lastReport = now;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (_dropped.sum() > 0) {
+			logger.warn(_dropped.sum() + " lines dropped in total, the output buffer was full.");
+		}
+	}
+
+	private static long getNumber(HashMap<String, String> parameter, String name, long defaultValue) {
+		String value = parameter.get(name);
+		if (value == null || value.isEmpty()) {
+			return defaultValue;
+		}
+		return Long.parseLong(value);
+	}
+
+	/**
+	 * Sampling of one Adabas file: every Nth operation, at most the sample rate
+	 * per second.
+	 */
+	static class Sampler {
+		private long count = 0;
+		private long second = 0;
+		private long inSecond = 0;
+
+		boolean sample(long every, long rate, long now) {
+			if (count++ % every != 0) {
+				return false;
+			}
+			if (rate == 0) {
+				return true;
+			}
+			if (now / 1000 != second) {
+				second = now / 1000;
+				inSecond = 0;
+			}
+			return inSecond++ < rate;
+		}
+	}
 }
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2021-2024 Software AG, Darmstadt, Germany and/or Software AG USA
+ * Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates
+ * and/or their licensors.
+ * Use, reproduction, transfer, publication or disclosure is prohibited except
+ * as specifically provided for in your License Agreement with Software AG.
+ *
+ */
+package com.softwareag.adabas.target;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.HashMap;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
+import com.softwareag.adabas.targetadapter.sdk.AdabasObjectData;
+
+public class ConsoleDumpTest {
+
+	private final ConsoleDump _target = new ConsoleDump();
+	private final TargetMetrics _metrics = new TargetMetrics();
+
+	@After
+	public void close() throws Exception {
+		_target.close();
+	}
+
+	@Test
+	public void samplesEveryNth() {
+		ConsoleDump.Sampler sampler = new ConsoleDump.Sampler();
+		StringBuilder sampled = new StringBuilder();
+		for (int i = 0; i < 10; i++) {
+			sampled.append(sampler.sample(3, 0, 0) ? 'x' : '.');
+		}
+		assertEquals("x..x..x..x", sampled.toString());
+	}
+
+	@Test
+	public void capsSamplesPerSecond() {
+		ConsoleDump.Sampler sampler = new ConsoleDump.Sampler();
+		assertTrue(sampler.sample(1, 2, 5000));
+		assertTrue(sampler.sample(1, 2, 5100));
+		assertFalse(sampler.sample(1, 2, 5999));
+		// the next second starts a new count
+		assertTrue(sampler.sample(1, 2, 6000));
+		assertTrue(sampler.sample(1, 2, 6500));
+		assertFalse(sampler.sample(1, 2, 6501));
+	}
+
+	@Test
+	public void capsEveryNthPerSecond() {
+		ConsoleDump.Sampler sampler = new ConsoleDump.Sampler();
+		StringBuilder sampled = new StringBuilder();
+		for (int i = 0; i < 12; i++) {
+			sampled.append(sampler.sample(2, 2, 1000) ? 'x' : '.');
+		}
+		assertEquals("x.x.........", sampled.toString());
+	}
+
+	@Test
+	public void samplesPerFile() throws Exception {
+		HashMap<String, String> parameter = new HashMap<>();
+		parameter.put("sampleEvery", "3");
+		_target.setParameter("test", parameter);
+		_target.setMetrics(_metrics);
+		for (int i = 1; i <= 7; i++) {
+			_target.insert(data("EMPL", i));
+		}
+		_target.insert(data("VEHI", 1));
+		_target.commit("1");
+
+		// EMPL: 1, 4 and 7 are logged, VEHI has a sampler of its own
+		assertEquals(4L, _metrics.snapshot().get("adabas_target_console_sampled_out"));
+	}
+
+	@Test
+	public void countsDroppedLines() throws Exception {
+		HashMap<String, String> parameter = new HashMap<>();
+		parameter.put("asyncOutput", "true");
+		parameter.put("bufferSize", "2");
+		_target.setParameter("test", parameter);
+		_target.setMetrics(_metrics);
+		// after close the writer no longer drains the buffer
+		_target.close();
+		for (int i = 0; i < 5; i++) {
+			_target.output("line " + i);
+		}
+
+		assertEquals(3L, _metrics.snapshot().get("adabas_target_console_dropped_lines"));
+		assertEquals(2L, _metrics.snapshot().get("adabas_target_console_buffered_lines"));
+	}
+
+	private static AdabasObjectData data(String fileName, long isn) {
+		AdabasObject ao = AdabasObject.newObject();
+		ao.putValue("ISN", isn);
+		return new AdabasObjectData("1", fileName, "SUBS", 12, 11, new Date(0), ao, null);
+	}
+}
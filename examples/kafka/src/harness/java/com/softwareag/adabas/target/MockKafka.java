@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.util.Properties;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+
+/**
+ * Kafka target with a {@link MockProducer} that acknowledges every send at
+ * once, for the load harness without broker. It measures the work of the
+ * target itself: encoding, routing and the transaction handling. The Avro
+ * schemas are derived from the metadata of the synthetic records.
+ */
+public class MockKafka extends Kafka implements SyntheticTarget {
+
+	private MockProducer<String, byte[]> _mockProducer;
+	private SyntheticRecords.Shape _shape = SyntheticRecords.Shape.FLAT;
+
+	@Override
+	public void setShape(SyntheticRecords.Shape shape) {
+		_shape = shape;
+	}
+
+	@Override
+	protected AvroSchemaStore createSchemaStore() {
+		return new AvroSchemaStore(new AvroSchemaFactory(table -> SyntheticRecords.metadata(_shape)));
+	}
+
+	@Override
+	protected Producer<String, byte[]> createProducer(Properties props) {
+		_mockProducer = new MockProducer<>(true, new StringSerializer(), new ByteArraySerializer());
+		return _mockProducer;
+	}
+
+	@Override
+	protected boolean commitTransaction(String transactionId) throws Exception {
+		try {
+			return super.commitTransaction(transactionId);
+		} finally {
+			// the mock keeps every record it got, drop them
+			_mockProducer.clear();
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
+import com.softwareag.adabas.targetadapter.sdk.AdabasObjectData;
+
+/**
+ * Encoding of the Kafka messages: the work done per operation before the
+ * record is handed to the producer. <code>json</code> and <code>avro</code>
+ * run the transform of the target (routing, key, headers, value and the
+ * producer record), <code>key</code> only the message key.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class KafkaEncodingBenchmark {
+
+	@Param({ "FLAT", "WIDE", "DEEP" })
+	public SyntheticRecords.Shape shape;
+
+	private AdabasObject _ao;
+	private AdabasObjectData _data;
+	private KafkaRouting.Route _route;
+	private File _properties;
+	private Kafka _json;
+	private Kafka _avro;
+
+	@Setup
+	public void setup() throws Exception {
+		_ao = SyntheticRecords.record(shape, 4711);
+		_data = SyntheticRecords.data(shape, 4711);
+		_route = new KafkaRouting().getRoute(SyntheticRecords.FILE_NAME);
+		_properties = File.createTempFile("kafka", ".properties");
+		Properties props = new Properties();
+		props.put("bootstrap.servers", "localhost:9092");
+		try (FileOutputStream out = new FileOutputStream(_properties)) {
+			props.store(out, null);
+		}
+		_json = newKafka("JSON");
+		_avro = newKafka("AVRO");
+	}
+
+	@TearDown
+	public void tearDown() {
+		_properties.delete();
+	}
+
+	/**
+	 * @return a Kafka target with a MockProducer and the synthetic metadata
+	 */
+	private Kafka newKafka(String valueFormat) throws Exception {
+		Kafka kafka = new Kafka() {
+			@Override
+			protected Producer<String, byte[]> createProducer(Properties props) {
+				return new MockProducer<>(true, new StringSerializer(), new ByteArraySerializer());
+			}
+
+			@Override
+			protected AvroSchemaStore createSchemaStore() {
+				return new AvroSchemaStore(new AvroSchemaFactory(table -> SyntheticRecords.metadata(shape)));
+			}
+		};
+		HashMap<String, String> parameter = new HashMap<>();
+		parameter.put("propertiesFile", _properties.getPath());
+		parameter.put("valueFormat", valueFormat);
+		kafka.setParameter("benchmark", parameter);
+		return kafka;
+	}
+
+	@Benchmark
+	public String key() {
+		return _route.getKey(_ao);
+	}
+
+	@Benchmark
+	public ProducerRecord<String, byte[]> json() throws Exception {
+		return _json.transform("Insert", _data);
+	}
+
+	@Benchmark
+	public ProducerRecord<String, byte[]> avro() throws Exception {
+		return _avro.transform("Insert", _data);
+	}
+}
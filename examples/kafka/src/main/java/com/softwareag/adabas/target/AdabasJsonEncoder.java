@@ -0,0 +1,356 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
+
+/**
+ * Writes {@link AdabasObject}s as compact JSON (UTF-8) into a reusable byte
+ * buffer. Nested objects (periodic groups) become JSON objects, lists
+ * (multiple-value fields) become JSON arrays, numbers are written as JSON
+ * numbers and all other values, like dates, as their string representation.
+ * <p>
+ * The encoder is not thread-safe, every thread has to use its own instance.
+ */
+public class AdabasJsonEncoder {
+
+	private static final int DEFAULT_CAPACITY = 8192;
+	private static final byte[] HEX = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e',
+			'f' };
+	private static final byte[] NULL = { 'n', 'u', 'l', 'l' };
+	private static final byte[] TRUE = { 't', 'r', 'u', 'e' };
+
+	private byte[] _buffer;
+	private int _count = 0;
+
+	public AdabasJsonEncoder() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param initialCapacity initial size of the buffer, it grows on demand
+	 */
+	public AdabasJsonEncoder(int initialCapacity) {
+		_buffer = new byte[Math.max(16, initialCapacity)];
+	}
+
+	/**
+	 * Encode the message that is sent to Kafka: <code>{"method":...,"data":{...}}</code>.
+	 *
+	 * @param method the operation, e.g. Insert
+	 * @param ao     the Adabas data
+	 * @return the JSON message
+	 */
+	public byte[] encodeMessage(String method, AdabasObject ao) {
+		return encodeMessage(method, ao, false);
+	}
+
+	/**
+	 * Encode the message that is sent to Kafka, a delta is marked by
+	 * <code>"delta":true</code>: <code>{"method":...,"delta":true,"data":{...}}</code>.
+	 *
+	 * @param method the operation, e.g. Update
+	 * @param ao     the Adabas data
+	 * @param delta  true if the data contains the changed fields only
+	 * @return the JSON message
+	 */
+	public byte[] encodeMessage(String method, AdabasObject ao, boolean delta) {
+		reset();
+		writeByte('{');
+		writeName("method");
+		writeString(method);
+		writeByte(',');
+		if (delta) {
+			writeName("delta");
+			writeBytes(TRUE);
+			writeByte(',');
+		}
+		writeName("data");
+		writeObject(ao);
+		writeByte('}');
+		return toByteArray();
+	}
+
+	/**
+	 * Encode one operation of a transaction envelope:
+	 * <code>{"method":...,"file":...,"isn":...,"data":{...}}</code>, a delta is
+	 * marked by <code>"delta":true</code>.
+	 *
+	 * @param method the operation, e.g. Insert
+	 * @param file   the Adabas file name
+	 * @param isn    the ISN, may be null
+	 * @param ao     the Adabas data
+	 * @param delta  true if the data contains the changed fields only
+	 * @return the JSON object
+	 */
+	public byte[] encodeOperation(String method, String file, Object isn, AdabasObject ao, boolean delta) {
+		reset();
+		writeByte('{');
+		writeName("method");
+		writeString(method);
+		writeByte(',');
+		writeName("file");
+		writeString(file);
+		writeByte(',');
+		writeName("isn");
+		writeValue(isn);
+		writeByte(',');
+		if (delta) {
+			writeName("delta");
+			writeBytes(TRUE);
+			writeByte(',');
+		}
+		writeName("data");
+		writeValue(ao);
+		writeByte('}');
+		return toByteArray();
+	}
+
+	/**
+	 * @param ao the Adabas data
+	 * @return the JSON object
+	 */
+	public byte[] encode(AdabasObject ao) {
+		reset();
+		writeObject(ao);
+		return toByteArray();
+	}
+
+	/**
+	 * Discard the content of the buffer, the buffer itself is kept.
+	 */
+	public void reset() {
+		_count = 0;
+	}
+
+	/**
+	 * @return number of bytes written since the last reset
+	 */
+	public int size() {
+		return _count;
+	}
+
+	/**
+	 * @return a copy of the bytes written since the last reset
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(_buffer, _count);
+	}
+
+	/**
+	 * Write the fields of the object in the order they were added.
+	 *
+	 * @param ao the Adabas data
+	 */
+	public void writeObject(AdabasObject ao) {
+		writeByte('{');
+		boolean first = true;
+		for (String key : ao.getKeyList()) {
+			if (!first) {
+				writeByte(',');
+			}
+			first = false;
+			writeName(key);
+			writeValue(ao.evaluateValue(key));
+		}
+		writeByte('}');
+	}
+
+	/**
+	 * @param value a field value
+	 */
+	public void writeValue(Object value) {
+		if (value == null) {
+			writeBytes(NULL);
+		} else if (value instanceof AdabasObject) {
+			writeObject((AdabasObject) value);
+		} else if (value instanceof List<?>) {
+			List<?> list = (List<?>) value;
+			writeByte('[');
+			for (int i = 0; i < list.size(); i++) {
+				if (i > 0) {
+					writeByte(',');
+				}
+				writeValue(list.get(i));
+			}
+			writeByte(']');
+		} else if (value instanceof Number) {
+			writeNumber((Number) value);
+		} else {
+			writeString(value.toString());
+		}
+	}
+
+	/**
+	 * @param name field name, written as string followed by a colon
+	 */
+	public void writeName(String name) {
+		writeString(name);
+		writeByte(':');
+	}
+
+	/**
+	 * @param number written as JSON number, NaN and infinity as string
+	 */
+	public void writeNumber(Number number) {
+		if (number instanceof Integer || number instanceof Long || number instanceof Short
+				|| number instanceof Byte) {
+			writeLong(number.longValue());
+		} else if ((number instanceof Double || number instanceof Float)
+				&& (Double.isNaN(number.doubleValue()) || Double.isInfinite(number.doubleValue()))) {
+			writeString(number.toString());
+		} else {
+			writeAscii(number.toString());
+		}
+	}
+
+	/**
+	 * @param value written as JSON string with the required escapes
+	 */
+	public void writeString(String value) {
+		int length = value.length();
+		ensureCapacity(length + 2);
+		_buffer[_count++] = '"';
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				if (c < 0x20 || c == '"' || c == '\\') {
+					writeEscaped(c);
+				} else {
+					ensureCapacity(2);
+					_buffer[_count++] = (byte) c;
+				}
+			} else if (c < 0x800) {
+				ensureCapacity(3);
+				_buffer[_count++] = (byte) (0xc0 | (c >> 6));
+				_buffer[_count++] = (byte) (0x80 | (c & 0x3f));
+			} else if (c == '\u2028' || c == '\u2029') {
+				writeEscaped(c);
+			} else if (Character.isHighSurrogate(c) && i + 1 < length
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				ensureCapacity(5);
+				_buffer[_count++] = (byte) (0xf0 | (codePoint >> 18));
+				_buffer[_count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+				_buffer[_count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+				_buffer[_count++] = (byte) (0x80 | (codePoint & 0x3f));
+			} else if (Character.isSurrogate(c)) {
+				// unpaired surrogate, not representable in UTF-8
+				writeEscaped(c);
+			} else {
+				ensureCapacity(4);
+				_buffer[_count++] = (byte) (0xe0 | (c >> 12));
+				_buffer[_count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				_buffer[_count++] = (byte) (0x80 | (c & 0x3f));
+			}
+		}
+		ensureCapacity(1);
+		_buffer[_count++] = '"';
+	}
+
+	/**
+	 * Append bytes that are already valid JSON, e.g. an encoded object.
+	 *
+	 * @param bytes the bytes to append
+	 */
+	public void writeBytes(byte[] bytes) {
+		ensureCapacity(bytes.length);
+		System.arraycopy(bytes, 0, _buffer, _count, bytes.length);
+		_count += bytes.length;
+	}
+
+	/**
+	 * @param b a single ASCII character
+	 */
+	public void writeByte(char b) {
+		ensureCapacity(1);
+		_buffer[_count++] = (byte) b;
+	}
+
+	private void writeEscaped(char c) {
+		ensureCapacity(6);
+		_buffer[_count++] = '\\';
+		switch (c) {
+			case '"':
+				_buffer[_count++] = '"';
+				break;
+			case '\\':
+				_buffer[_count++] = '\\';
+				break;
+			case '\n':
+				_buffer[_count++] = 'n';
+				break;
+			case '\r':
+				_buffer[_count++] = 'r';
+				break;
+			case '\t':
+				_buffer[_count++] = 't';
+				break;
+			case '\b':
+				_buffer[_count++] = 'b';
+				break;
+			case '\f':
+				_buffer[_count++] = 'f';
+				break;
+			default:
+				_buffer[_count++] = 'u';
+				_buffer[_count++] = HEX[(c >> 12) & 0xf];
+				_buffer[_count++] = HEX[(c >> 8) & 0xf];
+				_buffer[_count++] = HEX[(c >> 4) & 0xf];
+				_buffer[_count++] = HEX[c & 0xf];
+				break;
+		}
+	}
+
+	private void writeLong(long value) {
+		if (value == Long.MIN_VALUE) {
+			writeAscii(Long.toString(value));
+			return;
+		}
+		ensureCapacity(20);
+		if (value < 0) {
+			_buffer[_count++] = '-';
+			value = -value;
+		}
+		int digits = 1;
+		for (long v = value / 10; v != 0; v /= 10) {
+			digits++;
+		}
+		int pos = _count + digits;
+		_count = pos;
+		do {
+			_buffer[--pos] = (byte) ('0' + (value % 10));
+			value /= 10;
+		} while (value != 0);
+	}
+
+	private void writeAscii(String value) {
+		int length = value.length();
+		ensureCapacity(length);
+		for (int i = 0; i < length; i++) {
+			_buffer[_count++] = (byte) value.charAt(i);
+		}
+	}
+
+	private void ensureCapacity(int additional) {
+		if (_count + additional > _buffer.length) {
+			_buffer = Arrays.copyOf(_buffer, Math.max(_buffer.length << 1, _count + additional));
+		}
+	}
+}
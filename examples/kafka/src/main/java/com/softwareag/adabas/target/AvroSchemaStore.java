@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
+
+/**
+ * Local, in-process schema store for the Avro value format. The schema of a
+ * file is derived once by {@link AvroSchemaFactory} and identified by its
+ * CRC-64-AVRO fingerprint (see {@link SchemaNormalization}), which is sent with
+ * every message.
+ * <p>
+ * The store is thread-safe, every thread encodes into its own reused buffer.
+ */
+public class AvroSchemaStore {
+
+	private static final Logger logger = LogManager.getLogger();
+
+	private final AvroSchemaFactory _schemaFactory;
+	private final HashMap<String, Entry> _fileNameMap = new HashMap<>();
+	private final HashMap<Long, Entry> _fingerprintMap = new HashMap<>();
+
+	private final ThreadLocal<Buffer> _buffer = ThreadLocal.withInitial(Buffer::new);
+
+	/**
+	 * Schemas from the metadata of the Target Adapter.
+	 */
+	public AvroSchemaStore() {
+		this(new AvroSchemaFactory());
+	}
+
+	/**
+	 * @param schemaFactory derives the schemas of the files
+	 */
+	public AvroSchemaStore(AvroSchemaFactory schemaFactory) {
+		_schemaFactory = schemaFactory;
+	}
+
+	/**
+	 * @param fileName the Adabas file name
+	 * @return the schema entry, it is created on first use
+	 */
+	public synchronized Entry getEntry(String fileName) throws Exception {
+		Entry entry = _fileNameMap.get(fileName);
+		if (entry == null) {
+			entry = new Entry(_schemaFactory.getMapper(fileName));
+			_fileNameMap.put(fileName, entry);
+			_fingerprintMap.put(entry.getFingerprint(), entry);
+			logger.info("Avro schema for " + fileName + " registered with fingerprint "
+					+ Long.toHexString(entry.getFingerprint()) + ": " + entry.getSchema());
+		}
+		return entry;
+	}
+
+	/**
+	 * @param fingerprint the fingerprint sent with a message
+	 * @return the registered schema or null if unknown
+	 */
+	public synchronized Schema getSchema(long fingerprint) {
+		Entry entry = _fingerprintMap.get(fingerprint);
+		return entry == null ? null : entry.getSchema();
+	}
+
+	/**
+	 * Encode the Adabas data as Avro binary with the schema of the file.
+	 *
+	 * @param entry the schema entry of the file
+	 * @param ao    the Adabas data
+	 * @return the encoded record
+	 */
+	public byte[] encode(Entry entry, AdabasObject ao) throws Exception {
+		GenericRecord record = entry._mapper.map(ao);
+		Buffer buffer = _buffer.get();
+		buffer.out.reset();
+		buffer.encoder = EncoderFactory.get().binaryEncoder(buffer.out, buffer.encoder);
+		entry._writer.write(record, buffer.encoder);
+		buffer.encoder.flush();
+		return buffer.out.toByteArray();
+	}
+
+	/**
+	 * Output buffer and encoder of one thread.
+	 */
+	private static class Buffer {
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+		private BinaryEncoder encoder = null;
+	}
+
+	/**
+	 * A registered schema with its fingerprint, record mapper and datum writer.
+	 */
+	public static class Entry {
+		private final Schema _schema;
+		private final AvroRecordMapper _mapper;
+		private final long _fingerprint;
+		private final byte[] _fingerprintBytes;
+		private final GenericDatumWriter<GenericRecord> _writer;
+
+		private Entry(AvroRecordMapper mapper) {
+			Schema schema = mapper.getSchema();
+			_schema = schema;
+			_mapper = mapper;
+			_fingerprint = SchemaNormalization.parsingFingerprint64(schema);
+			_fingerprintBytes = ByteBuffer.allocate(Long.BYTES).putLong(_fingerprint).array();
+			_writer = new GenericDatumWriter<>(schema);
+		}
+
+		public Schema getSchema() {
+			return _schema;
+		}
+
+		public long getFingerprint() {
+			return _fingerprint;
+		}
+
+		/**
+		 * @return the fingerprint as 8 bytes, big-endian
+		 */
+		public byte[] getFingerprintBytes() {
+			return _fingerprintBytes;
+		}
+	}
+}
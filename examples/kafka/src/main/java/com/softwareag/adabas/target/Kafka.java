@@ -17,35 +17,125 @@ package com.softwareag.adabas.target;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
+import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonObject;
-import com.softwareag.adabas.targetadapter.sdk.AbstractTarget;
 import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
 import com.softwareag.adabas.targetadapter.sdk.AdabasObjectData;
 import com.softwareag.adabas.targetadapter.sdk.IUserTarget;
 
-public class Kafka extends AbstractTarget {
+public class Kafka extends ParallelDispatchTarget<ProducerRecord<String, byte[]>> {
 
 	private static final Logger logger = LogManager.getLogger();
 
 	private final String PROPERTIES_FILE = "propertiesFile";
-	private Producer<String, String> _producer;
+	private final String STREAMING = "streaming";
+	private final String MAX_IN_FLIGHT_BYTES = "maxInFlightBytes";
+	private final String COMMIT_TIMEOUT = "commitTimeout";
+	private final String FLUSH_ON_COMMIT = "flushOnCommit";
+	private final String VALUE_FORMAT = "valueFormat";
+	private final String ROUTING_FILE = "routingFile";
+	private final String DELTA_UPDATES = "deltaUpdates";
+	private final String TRANSACTION_ENVELOPE = "transactionEnvelope";
+	private final String ENVELOPE_TOPIC = "envelopeTopic";
+	private final String TRANSACTIONAL_ID = "transactional.id";
 
-	private ArrayList<ProducerRecord<String, String>> _list = null;
+	private static final String JSON = "JSON";
+	private static final String AVRO = "AVRO";
+	private static final String METHOD_HEADER = "method";
+	private static final String FINGERPRINT_HEADER = "schema.fingerprint";
+	private static final String FILE_HEADER = "file";
+
+	private static final long DEFAULT_MAX_IN_FLIGHT_BYTES = 32L * 1024 * 1024;
+	private static final long DEFAULT_COMMIT_TIMEOUT = 60000;
+	private static final String DEFAULT_ENVELOPE_TOPIC = "adabas.transactions";
+	private static final int DEFAULT_MAX_REQUEST_SIZE = 1048576;
+	/**
+	 * Bytes of a request kept free for the record and batch headers.
+	 */
+	private static final int REQUEST_OVERHEAD = 1024;
+
+	private Producer<String, byte[]> _producer;
+
+	private ArrayList<ProducerRecord<String, byte[]>> _list = null;
+
+	/**
+	 * The messages are encoded by the dispatch threads, every thread reuses its
+	 * own encoder and buffer.
+	 */
+	private final ThreadLocal<AdabasJsonEncoder> _encoder = ThreadLocal.withInitial(AdabasJsonEncoder::new);
+
+	private String _valueFormat = JSON;
+	private AvroSchemaStore _schemaStore = null;
+	private KafkaRouting _routing = new KafkaRouting();
+	/**
+	 * Send only the key and the changed fields of an update.
+	 */
+	private boolean _deltaUpdates = false;
+	/**
+	 * Transaction-envelope mode: the operations of a transaction are sent as one
+	 * message to {@link #_envelopeTopic}, null without.
+	 */
+	private TransactionEnvelope _envelope = null;
+	private String _envelopeTopic = DEFAULT_ENVELOPE_TOPIC;
+
+	/**
+	 * Streaming mode: records are handed to the producer as they arrive instead of
+	 * being collected in {@link #_list} until commit.
+	 */
+	private boolean _streaming = false;
+	private long _maxInFlightBytes = DEFAULT_MAX_IN_FLIGHT_BYTES;
+	private final ArrayDeque<InFlight> _inFlight = new ArrayDeque<>();
+	/**
+	 * Bytes of {@link #_inFlight}, written by the thread of the Target Adapter and
+	 * read by the metrics threads.
+	 */
+	private volatile long _inFlightBytes = 0;
+
+	private long _commitTimeout = DEFAULT_COMMIT_TIMEOUT;
+	private boolean _flushOnCommit = false;
+	/**
+	 * Transactional mode: one Adabas transaction is one Kafka transaction. It is
+	 * switched on by a transactional.id in the properties file.
+	 */
+	private boolean _transactional = false;
+	private boolean _inTransaction = false;
+	/**
+	 * First send failure of the current transaction, commit reports it.
+	 */
+	private Throwable _sendError = null;
+	/**
+	 * Bytes handed to the producer, null without metrics.
+	 */
+	private LongAdder _bytesProduced = null;
+
+	private final Callback _callback = (recordMetadata, error) -> {
+		if (error != null) {
+			logger.error(error.getLocalizedMessage());
+		} else {
+			logger.debug("Record successfully appended to topic " + recordMetadata.topic());
+		}
+	};
 
 	public Kafka() {
 	}
@@ -58,6 +148,65 @@ public class Kafka extends AbstractTarget {
 		} else {
 			throw new Exception("Properties file not set.");
 		}
+		if (parameter.containsKey(STREAMING)) {
+			_streaming = Boolean.parseBoolean(parameter.get(STREAMING));
+		}
+		if (parameter.containsKey(MAX_IN_FLIGHT_BYTES) && !parameter.get(MAX_IN_FLIGHT_BYTES).isEmpty()) {
+			_maxInFlightBytes = Long.parseLong(parameter.get(MAX_IN_FLIGHT_BYTES));
+			if (_maxInFlightBytes <= 0) {
+				throw new Exception("Maximum in-flight bytes must be greater than 0.");
+			}
+		}
+		if (parameter.containsKey(COMMIT_TIMEOUT) && !parameter.get(COMMIT_TIMEOUT).isEmpty()) {
+			_commitTimeout = Long.parseLong(parameter.get(COMMIT_TIMEOUT));
+			if (_commitTimeout <= 0) {
+				throw new Exception("Commit timeout must be greater than 0.");
+			}
+		}
+		if (parameter.containsKey(FLUSH_ON_COMMIT)) {
+			_flushOnCommit = Boolean.parseBoolean(parameter.get(FLUSH_ON_COMMIT));
+		}
+		if (parameter.containsKey(VALUE_FORMAT) && !parameter.get(VALUE_FORMAT).isEmpty()) {
+			_valueFormat = parameter.get(VALUE_FORMAT).toUpperCase();
+			if (!_valueFormat.equals(JSON) && !_valueFormat.equals(AVRO)) {
+				throw new Exception("Unknown value format " + parameter.get(VALUE_FORMAT) + ".");
+			}
+		}
+		if (_valueFormat.equals(AVRO)) {
+			_schemaStore = createSchemaStore();
+		}
+		if (parameter.containsKey(DELTA_UPDATES)) {
+			_deltaUpdates = Boolean.parseBoolean(parameter.get(DELTA_UPDATES));
+			if (_deltaUpdates && _schemaStore != null) {
+				throw new Exception("Delta updates require the value format " + JSON + ".");
+			}
+		}
+		boolean envelope = parameter.containsKey(TRANSACTION_ENVELOPE)
+				&& Boolean.parseBoolean(parameter.get(TRANSACTION_ENVELOPE));
+		if (envelope && _schemaStore != null) {
+			throw new Exception("The transaction envelope requires the value format " + JSON + ".");
+		}
+		if (envelope && _streaming) {
+			throw new Exception("The transaction envelope cannot be used in streaming mode.");
+		}
+		if (parameter.containsKey(ENVELOPE_TOPIC) && !parameter.get(ENVELOPE_TOPIC).isEmpty()) {
+			_envelopeTopic = parameter.get(ENVELOPE_TOPIC);
+		}
+		if (parameter.containsKey(ROUTING_FILE) && !parameter.get(ROUTING_FILE).isEmpty()) {
+			File file = new File(parameter.get(ROUTING_FILE));
+			logger.info("Reading Kafka routing from " + file.getAbsolutePath());
+			Properties routing = new Properties();
+			try (FileInputStream in = new FileInputStream(file)) {
+				routing.load(in);
+			}
+			_routing = new KafkaRouting(routing);
+		}
+		setDispatchParameter(parameter);
+		boolean coalesce = parameter.containsKey(COALESCE) && Boolean.parseBoolean(parameter.get(COALESCE));
+		if (coalesce && _streaming) {
+			throw new Exception("Coalescing cannot be used in streaming mode.");
+		}
+		setCoalescing(coalesce);
 
 		Properties props = new Properties();
 		try {
@@ -73,126 +222,359 @@ public class Kafka extends AbstractTarget {
 			props.put("acks", "all");
 		if (!props.containsKey("key.serializer"))
 			props.put("key.serializer", "org.apache.kafka.common.serialization.StringSerializer");
-		if (!props.containsKey("value.serializer"))
-			props.put("value.serializer", "org.apache.kafka.common.serialization.StringSerializer");
+		if (props.containsKey("value.serializer")
+				&& !ByteArraySerializer.class.getName().equals(props.get("value.serializer")))
+			logger.warn("value.serializer " + props.get("value.serializer") + " is replaced by "
+					+ ByteArraySerializer.class.getName() + ", the messages are already encoded.");
+		props.put("value.serializer", ByteArraySerializer.class.getName());
+		_transactional = props.containsKey(TRANSACTIONAL_ID);
+		if (_transactional && !props.containsKey("enable.idempotence"))
+			props.put("enable.idempotence", "true");
+		if (envelope) {
+			int maxRequestSize = props.containsKey("max.request.size")
+					? Integer.parseInt(props.get("max.request.size").toString().trim())
+					: DEFAULT_MAX_REQUEST_SIZE;
+			_envelope = new TransactionEnvelope(maxRequestSize - REQUEST_OVERHEAD);
+			logger.info("Transaction envelope to topic " + _envelopeTopic + ", maximum message size "
+					+ maxRequestSize);
+		}
+		logger.info("Streaming mode: " + _streaming + ", maximum in-flight bytes per transaction: " + _maxInFlightBytes);
+		logger.info("Value format: " + _valueFormat + ", delta updates: " + _deltaUpdates);
+		logger.info("Commit timeout: " + _commitTimeout + " ms, flush on commit: " + _flushOnCommit
+				+ ", transactional: " + _transactional);
 		logger.info("Used properties for the KafkaProducer:");
 		for (Entry<Object, Object> prop : props.entrySet()) {
 			logger.info(prop.getKey() + "=" + prop.getValue());
 		}
-		_producer = new KafkaProducer<String, String>(props);
+		_producer = createProducer(props);
+		if (_transactional) {
+			_producer.initTransactions();
+		}
 		return this;
 	}
 
+	/**
+	 * Create the producer, test and load harnesses replace it by a
+	 * MockProducer.
+	 *
+	 * @param props the producer properties
+	 * @return the producer
+	 */
+	protected Producer<String, byte[]> createProducer(Properties props) {
+		return new KafkaProducer<String, byte[]>(props);
+	}
+
+	/**
+	 * Create the schema store of the value format AVRO, benchmarks and load
+	 * harnesses replace the metadata of the Target Adapter by synthetic
+	 * metadata.
+	 *
+	 * @return the schema store
+	 */
+	protected AvroSchemaStore createSchemaStore() {
+		return new AvroSchemaStore();
+	}
+
 	@Override
-	public boolean commit(String transactionId) throws Exception {
-		if (_list != null && !_list.isEmpty()) {
-			for (ProducerRecord<String, String> record : _list) {
-				_producer.send(record, (recordMetadata, error) -> {
-					if (error != null) {
-						logger.error(error.getLocalizedMessage());
-					} else {
-						logger.debug("Record successfully appended to topic " + recordMetadata.topic());
-					}
-				});
+	protected boolean commitTransaction(String transactionId) throws Exception {
+		try {
+			if (_envelope != null && !_envelope.isEmpty()) {
+				for (byte[] value : _envelope.encode(transactionId, _encoder.get())) {
+					send(new ProducerRecord<String, byte[]>(_envelopeTopic, transactionId, value));
+				}
+			}
+			if (_list != null) {
+				for (ProducerRecord<String, byte[]> record : _list) {
+					send(record);
+				}
+			}
+			if (_flushOnCommit && !_inFlight.isEmpty()) {
+				_producer.flush();
+			}
+			long deadline = System.currentTimeMillis() + _commitTimeout;
+			while (!_inFlight.isEmpty() && _sendError == null) {
+				awaitOldest(deadline);
+			}
+			if (_sendError != null) {
+				logger.error("Transaction " + transactionId + " not delivered: " + _sendError.getLocalizedMessage());
+				abortTransaction();
+				return false;
+			}
+			if (_inTransaction) {
+				_producer.commitTransaction();
+				_inTransaction = false;
+			}
+			return true;
+		} catch (KafkaException e) {
+			logger.error("Commit of transaction " + transactionId + " failed: " + e.getLocalizedMessage());
+			abortTransaction();
+			return false;
+		} catch (Exception e) {
+			if (e instanceof InterruptedException) {
+				Thread.currentThread().interrupt();
+			}
+			// the next send must begin a new Kafka transaction
+			logger.error("Commit of transaction " + transactionId + " failed: " + e);
+			abortTransaction();
+			return false;
+		} finally {
+			if (_envelope != null) {
+				_envelope.clear();
 			}
 			_list = null;
+			_inFlight.clear();
+			_inFlightBytes = 0;
+			_sendError = null;
 		}
-		return true;
-	}
-
-	@Override
-	public void populate(AdabasObjectData data) throws Exception {
-		getList().add(createMessageString(data, "Populate"));
 	}
 
+	/**
+	 * Abort the Kafka transaction and drop the records kept until commit.
+	 * Records sent in streaming mode without Kafka transactions stay sent.
+	 */
 	@Override
-	public void create(AdabasObjectData data) throws Exception {
-		getList().add(createMessageString(data, "Create"));
+	protected void discardTransaction() {
+		abortTransaction();
+		if (_envelope != null) {
+			_envelope.clear();
+		}
+		_list = null;
+		_inFlight.clear();
+		_inFlightBytes = 0;
+		_sendError = null;
 	}
 
+	/**
+	 * Encode the message, runs on a dispatch thread.
+	 */
 	@Override
-	public void delete(AdabasObjectData data) throws Exception {
-		getList().add(createMessageString(data, "Delete"));
+	protected ProducerRecord<String, byte[]> transform(String operation, AdabasObjectData data) throws Exception {
+		if (_envelope != null) {
+			return createEnvelopeOperation(data, operation);
+		}
+		return createMessageString(data, operation);
 	}
 
 	@Override
-	public void insert(AdabasObjectData data) throws Exception {
-		getList().add(createMessageString(data, "Insert"));
+	protected void emit(String operation, AdabasObjectData data, ProducerRecord<String, byte[]> record)
+			throws Exception {
+		if (_envelope != null) {
+			_envelope.add(record.value());
+		} else {
+			process(record);
+		}
 	}
 
+	/**
+	 * The gauges read the buffers without synchronization, the values may be
+	 * slightly stale.
+	 */
 	@Override
-	public void update(AdabasObjectData data) throws Exception {
-		getList().add(createMessageString(data, "Update"));
+	public void setMetrics(TargetMetrics metrics) {
+		super.setMetrics(metrics);
+		_bytesProduced = metrics.counter("adabas_target_kafka_bytes_total",
+				"Bytes of keys and values handed to the producer.");
+		metrics.gauge("adabas_target_kafka_buffered_records", "Records kept until commit.", () -> {
+			ArrayList<ProducerRecord<String, byte[]>> list = _list;
+			return (list == null ? 0 : list.size()) + (_envelope == null ? 0 : _envelope.getOperationCount());
+		});
+		metrics.gauge("adabas_target_kafka_in_flight_bytes", "Bytes sent but not acknowledged yet.",
+				() -> _inFlightBytes);
 	}
 
 	@Override
 	public Object[][] getMetadata() {
-		return new Object[][] { { PROPERTIES_FILE, "Properties File", ParameterType.File } };
+		return withDispatchMetadata(new Object[][] { { PROPERTIES_FILE, "Properties File", ParameterType.File },
+				{ STREAMING, "Streaming Mode", ParameterType.Boolean },
+				{ MAX_IN_FLIGHT_BYTES, "Maximum In-Flight Bytes", ParameterType.Integer },
+				{ COMMIT_TIMEOUT, "Commit Timeout (ms)", ParameterType.Integer },
+				{ FLUSH_ON_COMMIT, "Flush on Commit", ParameterType.Boolean },
+				{ VALUE_FORMAT, "Value Format", ParameterType.Combo, new String[] { JSON, AVRO } },
+				{ ROUTING_FILE, "Routing File", ParameterType.File },
+				{ DELTA_UPDATES, "Delta Updates", ParameterType.Boolean },
+				{ TRANSACTION_ENVELOPE, "Transaction Envelope", ParameterType.Boolean },
+				{ ENVELOPE_TOPIC, "Envelope Topic", ParameterType.String },
+				{ COALESCE, "Coalesce Operations", ParameterType.Boolean } });
 	}
 
 	@Override
 	public void close() throws Exception {
-		_producer.close();
+		try {
+			_producer.close();
+		} finally {
+			super.close();
+		}
+	}
+
+	/**
+	 * Send the record straight away in streaming mode, otherwise keep it until
+	 * commit.
+	 * 
+	 * @param record the record to process
+	 */
+	private void process(ProducerRecord<String, byte[]> record) throws Exception {
+		if (_streaming) {
+			send(record);
+		} else {
+			getList().add(record);
+		}
 	}
 
-	private ProducerRecord<String, String> createMessageString(AdabasObjectData data, String command) throws Exception {
-		return createMessageString(data.getAdabasObject(), data.getFileName(), command);
+	/**
+	 * Hand the record to the producer. If the bytes in flight for this transaction
+	 * would exceed the configured limit, wait for the oldest sends to complete
+	 * first. Once a send of the transaction failed, the remaining records are
+	 * dropped because commit will report the transaction as failed anyway.
+	 * 
+	 * @param record the record to send
+	 */
+	private void send(ProducerRecord<String, byte[]> record) throws Exception {
+		int size = sizeOf(record);
+		while (!_inFlight.isEmpty() && _inFlightBytes + size > _maxInFlightBytes && _sendError == null) {
+			awaitOldest(System.currentTimeMillis() + _commitTimeout);
+		}
+		if (_sendError != null) {
+			return;
+		}
+		if (_transactional && !_inTransaction) {
+			_producer.beginTransaction();
+			_inTransaction = true;
+		}
+		_inFlight.add(new InFlight(_producer.send(record, _callback), size));
+		_inFlightBytes += size;
+		if (_bytesProduced != null) {
+			_bytesProduced.add(size);
+		}
 	}
 
-	private static final Gson gson = new GsonBuilder()
-			.setPrettyPrinting()
-			.create();
+	/**
+	 * Wait for the oldest outstanding send and release its bytes. A failed or
+	 * timed out send is remembered for commit.
+	 * 
+	 * @param deadline latest point in time (milliseconds) to wait for
+	 */
+	private void awaitOldest(long deadline) throws InterruptedException {
+		InFlight oldest = _inFlight.poll();
+		_inFlightBytes -= oldest.size;
+		try {
+			oldest.future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+		} catch (ExecutionException e) {
+			_sendError = e.getCause();
+		} catch (TimeoutException e) {
+			_sendError = new TimeoutException("Send not acknowledged within " + _commitTimeout + " ms");
+		}
+	}
 
-	private ProducerRecord<String, String> createMessageString(AdabasObject ao, String table, String command)
-			throws Exception {
-		Object isn = ao.evaluateValue("ISN");
-		String key = isn == null ? null : isn.toString();
-		JsonObject message = new JsonObject();
-		message.addProperty("method", command);
-		message.add("data", createJSON(ao));
-		return new ProducerRecord<String, String>(table, key, gson.toJson(message));
-	}
-
-	private JsonObject createJSON(AdabasObject ao) {
-		JsonObject json = new JsonObject();
-		for (String key : ao.getKeyList()) {
-			Object object = ao.evaluateValue(key);
-			if (object instanceof AdabasObject) {
-				json.add(key, createJSON((AdabasObject) object));
-			} else {
-				if (object instanceof List<?>) {
-					ArrayList<Object> list = new ArrayList<>();
-					for (Object obj : (List<?>) object) {
-						if (obj instanceof AdabasObject) {
-							list.add(createJSON((AdabasObject) obj));
-						} else {
-							list.add(obj);
-						}
-					}
-
-					json.add(key, new Gson().toJsonTree(list).getAsJsonArray());
-				} else {
-					if (object instanceof Date) {
-						json.addProperty(key, object.toString());
-					} else if (object instanceof Number) {
-						Number num = (Number) object;
-						json.addProperty(key, num);
-					} else {
-						json.addProperty(key, object.toString());
-					}
-				}
+	/**
+	 * Abort the running Kafka transaction, records already sent become invisible
+	 * to read_committed consumers.
+	 */
+	private void abortTransaction() {
+		if (_inTransaction) {
+			_inTransaction = false;
+			try {
+				_producer.abortTransaction();
+			} catch (KafkaException e) {
+				logger.error("Abort of Kafka transaction failed: " + e.getLocalizedMessage());
 			}
 		}
-		return json;
+	}
+
+	/**
+	 * @return size of key and value in bytes, the key size is approximated by its
+	 *         length
+	 */
+	private static int sizeOf(ProducerRecord<String, byte[]> record) {
+		int size = record.value() == null ? 0 : record.value().length;
+		if (record.key() != null) {
+			size += record.key().length();
+		}
+		return size;
+	}
+
+	private ProducerRecord<String, byte[]> createMessageString(AdabasObjectData data, String command) throws Exception {
+		boolean delta = _deltaUpdates && command.equals("Update") && data.getBeforeObject() != null;
+		return createMessageString(data.getAdabasObject(), delta ? data.getBeforeObject() : null, data.getFileName(),
+				command);
+	}
+
+	/**
+	 * @param before the before image of an update sent as delta, otherwise null
+	 */
+	private ProducerRecord<String, byte[]> createMessageString(AdabasObject ao, AdabasObject before, String table,
+			String command) throws Exception {
+		KafkaRouting.Route route = _routing.getRoute(table);
+		String key = route.getKey(ao);
+		Integer partition = route.getPartition(key, ao, topic -> _producer.partitionsFor(topic).size());
+		RecordHeaders headers = new RecordHeaders();
+		if (!route.getTopic().equals(table)) {
+			headers.add(FILE_HEADER, table.getBytes(StandardCharsets.UTF_8));
+		}
+		byte[] value;
+		if (_schemaStore != null) {
+			value = createAvroValue(ao, table, command, headers);
+		} else if (before != null) {
+			value = _encoder.get().encodeMessage(command, AdabasObjectDiff.diff(before, ao, route.getKeyFields()), true);
+		} else {
+			value = _encoder.get().encodeMessage(command, ao);
+		}
+		return new ProducerRecord<String, byte[]>(route.getTopic(), partition, key, value, headers);
+	}
+
+	/**
+	 * Transaction-envelope mode: the record only carries the encoded operation
+	 * until commit puts it into the envelope.
+	 */
+	private ProducerRecord<String, byte[]> createEnvelopeOperation(AdabasObjectData data, String command)
+			throws Exception {
+		AdabasObject ao = data.getAdabasObject();
+		AdabasObject image = ao != null ? ao : data.getBeforeObject();
+		Object isn = image == null ? null : image.evaluateValue("ISN");
+		boolean delta = _deltaUpdates && command.equals("Update") && data.getBeforeObject() != null;
+		if (delta) {
+			ao = AdabasObjectDiff.diff(data.getBeforeObject(), ao,
+					_routing.getRoute(data.getFileName()).getKeyFields());
+		}
+		return new ProducerRecord<String, byte[]>(_envelopeTopic,
+				_encoder.get().encodeOperation(command, data.getFileName(), isn, ao, delta));
+	}
+
+	/**
+	 * Avro value format: the value is the Avro binary encoding of the record, the
+	 * operation and the schema fingerprint are sent as headers. The Create message
+	 * carries the schema itself.
+	 */
+	private byte[] createAvroValue(AdabasObject ao, String table, String command, RecordHeaders headers)
+			throws Exception {
+		AvroSchemaStore.Entry entry = _schemaStore.getEntry(table);
+		headers.add(METHOD_HEADER, command.getBytes(StandardCharsets.UTF_8));
+		headers.add(FINGERPRINT_HEADER, entry.getFingerprintBytes());
+		if (command.equals("Create")) {
+			return entry.getSchema().toString().getBytes(StandardCharsets.UTF_8);
+		}
+		return _schemaStore.encode(entry, ao);
 	}
 
 	/**
 	 * @return the List of commands
 	 */
-	private ArrayList<ProducerRecord<String, String>> getList() {
+	private ArrayList<ProducerRecord<String, byte[]>> getList() {
 		if (_list == null) {
-			_list = new ArrayList<ProducerRecord<String, String>>();
+			_list = new ArrayList<ProducerRecord<String, byte[]>>();
 		}
 		return _list;
 	}
+
+	/**
+	 * A send that has been handed to the producer but is not acknowledged yet.
+	 */
+	private static class InFlight {
+		private final Future<RecordMetadata> future;
+		private final int size;
+
+		private InFlight(Future<RecordMetadata> future, int size) {
+			this.future = future;
+			this.size = size;
+		}
+	}
 }
\ No newline at end of file
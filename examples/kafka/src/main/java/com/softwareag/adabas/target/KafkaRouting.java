@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.ToIntFunction;
+
+import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
+
+/**
+ * Routing table of the Kafka target: topic, message key and partitioner per
+ * Adabas file. The table is read from a properties file:
+ *
+ * <pre>
+ * EMPL_EMPLOYEES.topic=employees
+ * EMPL_EMPLOYEES.key=PERSONNEL_ID
+ * VEHICLES.key=PERSONNEL_ID,REG_NUM
+ * VEHICLES.keySeparator=/
+ * VEHICLES.partitioner=com.example.VehiclePartitioner
+ * *.topic=adabas
+ * </pre>
+ *
+ * The entries with the file name <code>*</code> are the defaults for all
+ * files. Without a topic the file name is the topic, without key fields the
+ * ISN is the key. The route of a file, including its key encoder, is created
+ * once and reused for all records of the file. Partitioners are called by the
+ * dispatch threads and have to be thread-safe.
+ */
+public class KafkaRouting {
+
+	private static final String DEFAULT = "*";
+	private static final String TOPIC = "topic";
+	private static final String KEY = "key";
+	private static final String KEY_SEPARATOR = "keySeparator";
+	private static final String PARTITIONER = "partitioner";
+	private static final String DEFAULT_KEY_SEPARATOR = "|";
+
+	private final Properties _properties;
+	private final HashMap<String, Route> _routeMap = new HashMap<>();
+
+	/**
+	 * Routing without configuration: topic is the file name, key is the ISN.
+	 */
+	public KafkaRouting() {
+		this(new Properties());
+	}
+
+	/**
+	 * @param properties the routing table
+	 */
+	public KafkaRouting(Properties properties) {
+		_properties = properties;
+	}
+
+	/**
+	 * @param fileName the Adabas file name
+	 * @return the route of the file, it is created on first use
+	 */
+	public synchronized Route getRoute(String fileName) throws Exception {
+		Route route = _routeMap.get(fileName);
+		if (route == null) {
+			route = createRoute(fileName);
+			_routeMap.put(fileName, route);
+		}
+		return route;
+	}
+
+	private Route createRoute(String fileName) throws Exception {
+		String topic = getProperty(fileName, TOPIC);
+		String keyFields = getProperty(fileName, KEY);
+		String separator = getProperty(fileName, KEY_SEPARATOR);
+		String partitioner = getProperty(fileName, PARTITIONER);
+
+		KeyEncoder keyEncoder;
+		String[] fields;
+		if (keyFields == null) {
+			fields = new String[] { "ISN" };
+			keyEncoder = fieldEncoder("ISN");
+		} else {
+			fields = keyFields.split(",");
+			for (int i = 0; i < fields.length; i++) {
+				fields[i] = fields[i].trim();
+			}
+			keyEncoder = fields.length == 1 ? fieldEncoder(fields[0])
+					: compositeEncoder(fields, separator == null ? DEFAULT_KEY_SEPARATOR : separator);
+		}
+		RecordPartitioner recordPartitioner = null;
+		if (partitioner != null) {
+			try {
+				recordPartitioner = (RecordPartitioner) Class.forName(partitioner).getDeclaredConstructor()
+						.newInstance();
+			} catch (ReflectiveOperationException | ClassCastException e) {
+				throw new Exception("Partitioner " + partitioner + " for " + fileName + " cannot be created: "
+						+ e.getLocalizedMessage(), e);
+			}
+		}
+		return new Route(topic == null ? fileName : topic, Arrays.asList(fields), keyEncoder, recordPartitioner);
+	}
+
+	private String getProperty(String fileName, String name) {
+		String value = _properties.getProperty(fileName + "." + name);
+		if (value == null) {
+			value = _properties.getProperty(DEFAULT + "." + name);
+		}
+		return value == null || value.trim().isEmpty() ? null : value.trim();
+	}
+
+	private static KeyEncoder fieldEncoder(String field) {
+		return ao -> {
+			Object value = ao.evaluateValue(field);
+			return value == null ? null : value.toString();
+		};
+	}
+
+	private static KeyEncoder compositeEncoder(String[] fields, String separator) {
+		return ao -> {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < fields.length; i++) {
+				if (i > 0) {
+					sb.append(separator);
+				}
+				Object value = ao.evaluateValue(fields[i]);
+				if (value != null) {
+					sb.append(value);
+				}
+			}
+			return sb.toString();
+		};
+	}
+
+	/**
+	 * Creates the message key from the Adabas data.
+	 */
+	public interface KeyEncoder {
+		String key(AdabasObject ao);
+	}
+
+	/**
+	 * Topic, key encoder and optional partitioner of one Adabas file.
+	 */
+	public static class Route {
+		private final String _topic;
+		private final List<String> _keyFields;
+		private final KeyEncoder _keyEncoder;
+		private final RecordPartitioner _partitioner;
+		/**
+		 * Looked up once, a concurrent lookup by another dispatch thread is
+		 * harmless.
+		 */
+		private volatile int _numPartitions = 0;
+
+		private Route(String topic, List<String> keyFields, KeyEncoder keyEncoder, RecordPartitioner partitioner) {
+			_topic = topic;
+			_keyFields = keyFields;
+			_keyEncoder = keyEncoder;
+			_partitioner = partitioner;
+		}
+
+		public String getTopic() {
+			return _topic;
+		}
+
+		/**
+		 * @return the fields of the message key
+		 */
+		public List<String> getKeyFields() {
+			return _keyFields;
+		}
+
+		/**
+		 * @param ao the Adabas data
+		 * @return the message key, may be null
+		 */
+		public String getKey(AdabasObject ao) {
+			return _keyEncoder.key(ao);
+		}
+
+		/**
+		 * @param key             the message key
+		 * @param ao              the Adabas data
+		 * @param partitionsCount looks up the number of partitions of the topic, it
+		 *                        is called once per route
+		 * @return the partition or null to let the producer partition by key
+		 */
+		public Integer getPartition(String key, AdabasObject ao, ToIntFunction<String> partitionsCount) {
+			if (_partitioner == null) {
+				return null;
+			}
+			if (_numPartitions == 0) {
+				_numPartitions = partitionsCount.applyAsInt(_topic);
+			}
+			return _partitioner.partition(_topic, key, ao, _numPartitions);
+		}
+	}
+}
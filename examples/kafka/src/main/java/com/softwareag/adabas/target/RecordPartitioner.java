@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
+
+/**
+ * Custom partitioner for the records of one Adabas file, configured in the
+ * routing file of the Kafka target. Implementations need a parameterless
+ * constructor.
+ */
+public interface RecordPartitioner {
+
+	/**
+	 * @param topic         the target topic
+	 * @param key           the message key, may be null
+	 * @param ao            the Adabas data
+	 * @param numPartitions number of partitions of the topic
+	 * @return the partition, between 0 and numPartitions - 1
+	 */
+	int partition(String topic, String key, AdabasObject ao, int numPartitions);
+}
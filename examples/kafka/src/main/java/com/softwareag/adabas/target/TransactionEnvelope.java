@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2021-2024 Software AG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.softwareag.adabas.target;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the encoded operations of one transaction for a single message:
+ * <code>{"transaction":...,"part":1,"parts":1,"operations":[...]}</code>. When
+ * the operations exceed the maximum size of a message, the transaction is split
+ * into several parts, an operation is never split.
+ */
+public class TransactionEnvelope {
+
+	/**
+	 * Bytes kept free for the part header with the transaction id.
+	 */
+	static final int HEADER_RESERVE = 256;
+
+	private final int _maxBytes;
+	private final ArrayList<ArrayList<byte[]>> _parts = new ArrayList<>();
+	private ArrayList<byte[]> _part = null;
+	private int _partBytes = 0;
+	private int _operationCount = 0;
+
+	/**
+	 * @param maxBytes maximum size of a message, operations larger than this are
+	 *                 sent in a part of their own
+	 */
+	public TransactionEnvelope(int maxBytes) {
+		_maxBytes = maxBytes;
+	}
+
+	/**
+	 * @param operation the JSON object of the operation
+	 */
+	public void add(byte[] operation) {
+		if (_part == null || (!_part.isEmpty() && HEADER_RESERVE + _partBytes + 1 + operation.length > _maxBytes)) {
+			_part = new ArrayList<>();
+			_parts.add(_part);
+			_partBytes = 0;
+		}
+		_part.add(operation);
+		_partBytes += operation.length + 1;
+		_operationCount++;
+	}
+
+	public boolean isEmpty() {
+		return _operationCount == 0;
+	}
+
+	/**
+	 * @return the number of operations added since the last clear
+	 */
+	public int getOperationCount() {
+		return _operationCount;
+	}
+
+	/**
+	 * @param transactionId the id of the transaction
+	 * @param encoder       the encoder whose buffer is used
+	 * @return the messages of the transaction in the order of the parts
+	 */
+	public List<byte[]> encode(String transactionId, AdabasJsonEncoder encoder) {
+		ArrayList<byte[]> messages = new ArrayList<>(_parts.size());
+		for (int i = 0; i < _parts.size(); i++) {
+			encoder.reset();
+			encoder.writeByte('{');
+			encoder.writeName("transaction");
+			encoder.writeString(transactionId);
+			encoder.writeByte(',');
+			encoder.writeName("part");
+			encoder.writeNumber(i + 1);
+			encoder.writeByte(',');
+			encoder.writeName("parts");
+			encoder.writeNumber(_parts.size());
+			encoder.writeByte(',');
+			encoder.writeName("operations");
+			encoder.writeByte('[');
+			ArrayList<byte[]> part = _parts.get(i);
+			for (int j = 0; j < part.size(); j++) {
+				if (j > 0) {
+					encoder.writeByte(',');
+				}
+				encoder.writeBytes(part.get(j));
+			}
+			encoder.writeByte(']');
+			encoder.writeByte('}');
+			messages.add(encoder.toByteArray());
+		}
+		return messages;
+	}
+
+	/**
+	 * Discard the operations, the transaction is sent or aborted.
+	 */
+	public void clear() {
+		_parts.clear();
+		_part = null;
+		_partBytes = 0;
+		_operationCount = 0;
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2021-2024 Software AG, Darmstadt, Germany and/or Software AG USA
+ * Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates
+ * and/or their licensors.
+ * Use, reproduction, transfer, publication or disclosure is prohibited except
+ * as specifically provided for in your License Agreement with Software AG.
+ *
+ */
+package com.softwareag.adabas.target;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+
+import org.junit.Test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
+
+public class AdabasJsonEncoderTest {
+
+	private final AdabasJsonEncoder _encoder = new AdabasJsonEncoder(16);
+
+	@Test
+	public void message() throws Exception {
+		AdabasObject ao = AdabasObject.newObject();
+		ao.putValue("NAME", "Mustermann");
+		ao.putValue("ISN", 42l);
+		ao.putValue("SALARY", new BigDecimal("1234.50"));
+		ao.putValue("MISSING", null);
+		ArrayList<String> lang = new ArrayList<>();
+		lang.add("GER");
+		lang.add("ENG");
+		ao.putValue("LANG", lang);
+		ArrayList<AdabasObject> income = new ArrayList<>();
+		AdabasObject pe = AdabasObject.newObject();
+		pe.putValue("CURRCODE", "USD");
+		ArrayList<Integer> bonus = new ArrayList<>();
+		bonus.add(-1000);
+		pe.putValue("BONUS", bonus);
+		income.add(pe);
+		ao.putValue("INCOME", income);
+
+		String json = new String(_encoder.encodeMessage("Insert", ao), StandardCharsets.UTF_8);
+		assertEquals("{\"method\":\"Insert\",\"data\":{\"NAME\":\"Mustermann\",\"ISN\":42,\"SALARY\":1234.50,"
+				+ "\"MISSING\":null,\"LANG\":[\"GER\",\"ENG\"],\"INCOME\":[{\"CURRCODE\":\"USD\",\"BONUS\":[-1000]}]}}",
+				json);
+	}
+
+	@Test
+	public void deltaMessage() throws Exception {
+		AdabasObject before = AdabasObject.newObject();
+		before.putValue("ISN", 42l);
+		before.putValue("NAME", "Mustermann");
+		before.putValue("CITY", "Berlin");
+		AdabasObject after = AdabasObject.newObject();
+		after.putValue("ISN", 42l);
+		after.putValue("NAME", "Mustermann");
+		after.putValue("CITY", "Darmstadt");
+
+		AdabasObject delta = AdabasObjectDiff.diff(before, after, null);
+		assertEquals("{\"method\":\"Update\",\"delta\":true,\"data\":{\"ISN\":42,\"CITY\":\"Darmstadt\"}}",
+				new String(_encoder.encodeMessage("Update", delta, true), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void reuse() throws Exception {
+		AdabasObject big = AdabasObject.newObject();
+		for (int i = 0; i < 100; i++) {
+			big.putValue("FIELD" + i, "value " + i);
+		}
+		_encoder.encode(big);
+		AdabasObject small = AdabasObject.newObject();
+		small.putValue("A", Long.MIN_VALUE);
+		assertEquals("{\"A\":-9223372036854775808}", new String(_encoder.encode(small), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void escape() throws Exception {
+		String value = "\"quoted\" back\\slash\ttab\nline \u0001 umlaut \u00e4 euro \u20ac clef \ud834\udd1e";
+		AdabasObject ao = AdabasObject.newObject();
+		ao.putValue("TEXT", value);
+		Date date = new Date();
+		ao.putValue("DATE", date);
+		ao.putValue("NAN", Double.NaN);
+
+		byte[] bytes = _encoder.encode(ao);
+		String json = new String(bytes, StandardCharsets.UTF_8);
+		assertTrue(json.contains("\\u0001"));
+		JsonObject parsed = JsonParser.parseString(json).getAsJsonObject();
+		assertEquals(value, parsed.get("TEXT").getAsString());
+		assertEquals(date.toString(), parsed.get("DATE").getAsString());
+		assertEquals("NaN", parsed.get("NAN").getAsString());
+	}
+
+	@Test
+	public void nested() throws Exception {
+		AdabasObject ao = AdabasObject.newObject();
+		ArrayList<AdabasObject> income = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			AdabasObject pe = AdabasObject.newObject();
+			pe.putValue("SALARY", (i + 1) * 50000);
+			income.add(pe);
+		}
+		ao.putValue("INCOME", income);
+		JsonArray array = JsonParser.parseString(new String(_encoder.encode(ao), StandardCharsets.UTF_8))
+				.getAsJsonObject().get("INCOME").getAsJsonArray();
+		assertEquals(3, array.size());
+		assertEquals(150000, array.get(2).getAsJsonObject().get("SALARY").getAsInt());
+	}
+}
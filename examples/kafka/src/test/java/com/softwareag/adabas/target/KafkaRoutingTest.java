@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2021-2024 Software AG, Darmstadt, Germany and/or Software AG USA
+ * Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates
+ * and/or their licensors.
+ * Use, reproduction, transfer, publication or disclosure is prohibited except
+ * as specifically provided for in your License Agreement with Software AG.
+ *
+ */
+package com.softwareag.adabas.target;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
+
+public class KafkaRoutingTest {
+
+	@Test
+	public void defaults() throws Exception {
+		KafkaRouting routing = new KafkaRouting();
+		KafkaRouting.Route route = routing.getRoute("EMPL_EMPLOYEES");
+		assertEquals("EMPL_EMPLOYEES", route.getTopic());
+		assertEquals("42", route.getKey(employee()));
+		assertNull(route.getKey(AdabasObject.newObject()));
+		assertNull(route.getPartition("42", employee(), topic -> 3));
+		assertSame(route, routing.getRoute("EMPL_EMPLOYEES"));
+	}
+
+	@Test
+	public void configured() throws Exception {
+		Properties properties = new Properties();
+		properties.put("*.topic", "adabas");
+		properties.put("EMPL_EMPLOYEES.key", "PERSONNEL_ID");
+		properties.put("VEHICLES.topic", "vehicles");
+		properties.put("VEHICLES.key", "PERSONNEL_ID, NAME ,CITY");
+		properties.put("VEHICLES.keySeparator", "/");
+		properties.put("VEHICLES.partitioner", LastPartitioner.class.getName());
+		KafkaRouting routing = new KafkaRouting(properties);
+
+		KafkaRouting.Route route = routing.getRoute("EMPL_EMPLOYEES");
+		assertEquals("adabas", route.getTopic());
+		assertEquals("TEST0002", route.getKey(employee()));
+
+		route = routing.getRoute("VEHICLES");
+		assertEquals("vehicles", route.getTopic());
+		assertEquals("TEST0002/Mustermann/", route.getKey(employee()));
+		assertEquals(Integer.valueOf(5), route.getPartition("key", employee(), topic -> 6));
+	}
+
+	@Test(expected = Exception.class)
+	public void unknownPartitioner() throws Exception {
+		Properties properties = new Properties();
+		properties.put("EMPL_EMPLOYEES.partitioner", "com.example.Unknown");
+		new KafkaRouting(properties).getRoute("EMPL_EMPLOYEES");
+	}
+
+	private AdabasObject employee() {
+		AdabasObject ao = AdabasObject.newObject();
+		ao.putValue("ISN", 42l);
+		ao.putValue("PERSONNEL_ID", "TEST0002");
+		ao.putValue("NAME", "Mustermann");
+		return ao;
+	}
+
+	public static class LastPartitioner implements RecordPartitioner {
+		@Override
+		public int partition(String topic, String key, AdabasObject ao, int numPartitions) {
+			return numPartitions - 1;
+		}
+	}
+}
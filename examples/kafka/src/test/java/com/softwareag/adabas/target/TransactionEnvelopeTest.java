@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2021-2024 Software AG, Darmstadt, Germany and/or Software AG USA
+ * Inc., Reston, VA, USA, and/or its subsidiaries and/or its affiliates
+ * and/or their licensors.
+ * Use, reproduction, transfer, publication or disclosure is prohibited except
+ * as specifically provided for in your License Agreement with Software AG.
+ *
+ */
+package com.softwareag.adabas.target;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.softwareag.adabas.targetadapter.sdk.AdabasObject;
+
+public class TransactionEnvelopeTest {
+
+	private final AdabasJsonEncoder _encoder = new AdabasJsonEncoder(16);
+
+	@Test
+	public void oneMessage() throws Exception {
+		TransactionEnvelope envelope = new TransactionEnvelope(1024 * 1024);
+		envelope.add(_encoder.encodeOperation("Insert", "EMPL", 42l, record(42, "Mustermann"), false));
+		envelope.add(_encoder.encodeOperation("Delete", "VEHICLES", 7l, null, false));
+
+		List<byte[]> messages = envelope.encode("tx\"1", _encoder);
+		assertEquals(1, messages.size());
+		assertEquals("{\"transaction\":\"tx\\\"1\",\"part\":1,\"parts\":1,\"operations\":["
+				+ "{\"method\":\"Insert\",\"file\":\"EMPL\",\"isn\":42,\"data\":{\"ISN\":42,\"NAME\":\"Mustermann\"}},"
+				+ "{\"method\":\"Delete\",\"file\":\"VEHICLES\",\"isn\":7,\"data\":null}]}",
+				new String(messages.get(0), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void split() throws Exception {
+		int maxBytes = TransactionEnvelope.HEADER_RESERVE + 1000;
+		TransactionEnvelope envelope = new TransactionEnvelope(maxBytes);
+		StringBuilder name = new StringBuilder();
+		for (int i = 0; i < 300; i++) {
+			name.append('x');
+		}
+		for (int isn = 1; isn <= 10; isn++) {
+			envelope.add(_encoder.encodeOperation("Update", "EMPL", (long) isn, record(isn, name.toString()), true));
+		}
+		assertEquals(10, envelope.getOperationCount());
+
+		List<byte[]> messages = envelope.encode("1234", _encoder);
+		assertEquals(5, messages.size());
+		int operations = 0;
+		for (int i = 0; i < messages.size(); i++) {
+			assertTrue(messages.get(i).length <= maxBytes);
+			JsonObject message = JsonParser.parseString(new String(messages.get(i), StandardCharsets.UTF_8))
+					.getAsJsonObject();
+			assertEquals("1234", message.get("transaction").getAsString());
+			assertEquals(i + 1, message.get("part").getAsInt());
+			assertEquals(5, message.get("parts").getAsInt());
+			for (int j = 0; j < message.getAsJsonArray("operations").size(); j++) {
+				operations++;
+				JsonObject operation = message.getAsJsonArray("operations").get(j).getAsJsonObject();
+				assertEquals(operations, operation.get("isn").getAsInt());
+				assertTrue(operation.get("delta").getAsBoolean());
+			}
+		}
+		assertEquals(10, operations);
+
+		envelope.clear();
+		assertTrue(envelope.isEmpty());
+		assertTrue(envelope.encode("1235", _encoder).isEmpty());
+	}
+
+	@Test
+	public void largeOperation() throws Exception {
+		TransactionEnvelope envelope = new TransactionEnvelope(TransactionEnvelope.HEADER_RESERVE + 10);
+		envelope.add(_encoder.encodeOperation("Insert", "EMPL", 1l, record(1, "Mustermann"), false));
+		envelope.add(_encoder.encodeOperation("Insert", "EMPL", 2l, record(2, "Musterfrau"), false));
+		assertEquals(2, envelope.encode("1", _encoder).size());
+	}
+
+	private static AdabasObject record(long isn, String name) {
+		AdabasObject ao = AdabasObject.newObject();
+		ao.putValue("ISN", isn);
+		ao.putValue("NAME", name);
+		return ao;
+	}
+}